@@ -0,0 +1,150 @@
+package mywiimote;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Listener that hands every event to a JMH blackhole, so the benchmarks
+ * measure the library and not the client.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class BlackholeListener implements WiiMoteListener {
+
+    private final Blackhole hole;
+
+    /**
+     * Number of events received. Written only by the thread that delivers
+     * the events.
+     */
+    volatile long events = 0;
+
+    BlackholeListener(Blackhole hole) {
+        this.hole = hole;
+    }
+
+    @Override
+    public void buttonPlusPressed() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void buttonMinusPressed() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void buttonAPressed() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void buttonBPressed() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void button1Pressed() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void button2Pressed() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void buttonLeftPressed() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void buttonRightPressed() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void buttonUpPressed() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void buttonDownPressed() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void buttonPlusReleased() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void buttonMinusReleased() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void buttonAReleased() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void buttonBReleased() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void button1Released() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void button2Released() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void buttonLeftReleased() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void buttonRightReleased() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void buttonUpReleased() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void buttonDownReleased() {
+        hole.consume(1);
+        events++;
+    }
+
+    @Override
+    public void accelerometerValues(double x, double y, double z, double xBoundary, double yBoundary, double zBoundary) {
+        hole.consume(x + y + z);
+        events++;
+    }
+}
@@ -0,0 +1,143 @@
+package mywiimote;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the decoding of 0x31 reports. Each operation is one report,
+ * so the throughput is reports per second. The queues of events never
+ * overflow: the dispatchers that are not started are drained on the
+ * benchmark thread after each report.
+ *
+ * Run with the GC profiler to see the allocation rate:
+ * java -jar target/benchmarks.jar DecodeBenchmark -prof gc
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DecodeBenchmark {
+
+    private byte[][] reports;
+
+    private int next = 0;
+
+    /**
+     * Buttons only.
+     */
+    private ButtonState buttons;
+
+    private EventDispatcher buttonsDispatcher;
+
+    /**
+     * Accelerometer normalization only.
+     */
+    private AccelerometerSample sample;
+
+    /**
+     * Whole report, sensitivity off: every sample is queued.
+     */
+    private WiiMoteDriver unfiltered;
+
+    /**
+     * Whole report, sensitivity filter on.
+     */
+    private WiiMoteDriver filtered;
+
+    /**
+     * Whole report, filter pipeline.
+     */
+    private WiiMoteDriver pipeline;
+
+    /**
+     * Whole report, events delivered to the listener by the dispatcher thread.
+     * The decoding waits while the queue is full.
+     */
+    private WiiMoteDriver delivered;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole hole) {
+        reports = Reports.stream();
+        BlackholeListener listener = new BlackholeListener(hole);
+        buttonsDispatcher = new EventDispatcher(listener, 64, OverflowPolicy.BLOCK, new LatencyHistogram(), new EventBus());
+        buttons = new ButtonState(buttonsDispatcher);
+        sample = new AccelerometerSample();
+        unfiltered = new WiiMoteDriver(listener, WiiMoteListener.SENSITIVITY_OFF, 64, OverflowPolicy.BLOCK);
+        filtered = new WiiMoteDriver(listener, WiiMoteListener.SENSITIVITY_MEDIUM, 64, OverflowPolicy.BLOCK);
+        pipeline = new WiiMoteDriver(listener, WiiMoteListener.SENSITIVITY_OFF, 64, OverflowPolicy.BLOCK);
+        pipeline.setFilters(AccelerometerFilters.deadZone(0.01), AccelerometerFilters.highPass(0.05),
+                AccelerometerFilters.lowPass(0.5), AccelerometerFilters.hysteresis(0.005), AccelerometerFilters.decimation(2));
+        delivered = new WiiMoteDriver(listener, WiiMoteListener.SENSITIVITY_OFF, 1024, OverflowPolicy.BLOCK);
+        delivered.getDispatcher().start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        delivered.getDispatcher().stop();
+    }
+
+    private byte[] nextReport() {
+        byte[] report = reports[next];
+        next = (next + 1) & (Reports.SIZE - 1);
+        return report;
+    }
+
+    @Benchmark
+    public void buttonDecoding() {
+        byte[] report = nextReport();
+        buttons.update(report[2], report[3]);
+        //not started: delivers the queued events on this thread and returns.
+        buttonsDispatcher.run();
+    }
+
+    @Benchmark
+    public double accelerometerNormalization() {
+        byte[] report = nextReport();
+        sample.set(report[4], report[5], report[6]);
+        return sample.x + sample.y + sample.z;
+    }
+
+    @Benchmark
+    public void reportWithoutFilter() {
+        unfiltered.process(nextReport());
+        unfiltered.getDispatcher().run();
+    }
+
+    @Benchmark
+    public void reportWithSensitivityFilter() {
+        filtered.process(nextReport());
+        filtered.getDispatcher().run();
+    }
+
+    @Benchmark
+    public void reportWithFilterPipeline() {
+        pipeline.process(nextReport());
+        pipeline.getDispatcher().run();
+    }
+
+    @Benchmark
+    public void reportWithListenerDispatch() {
+        delivered.process(nextReport());
+    }
+
+    @Benchmark
+    public byte[] hexToByteArray() {
+        return Util.hexToByteArray("a2120031");
+    }
+}
@@ -0,0 +1,95 @@
+package mywiimote;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark of the gesture recognition. Each operation is one sample of the
+ * accelerometer matched against the whole library of gestures, so the
+ * throughput is samples matched per second.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GestureBenchmark {
+
+    private static final int BATCH = 10;
+
+    private static final int STREAM = 1000;
+
+    @Param({"100", "200"})
+    public int gestures;
+
+    @Param({"40"})
+    public int length;
+
+    private GestureEngine engine;
+
+    private final long[] timestamps = new long[BATCH];
+    private final double[] x = new double[STREAM + BATCH];
+    private final double[] y = new double[STREAM + BATCH];
+    private final double[] z = new double[STREAM + BATCH];
+    private final double[] bx = new double[BATCH];
+    private final double[] by = new double[BATCH];
+    private final double[] bz = new double[BATCH];
+
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole hole) {
+        Random random = new Random(42);
+        engine = new GestureEngine((name, confidence, latency) -> hole.consume(confidence));
+        for (int g = 0; g < gestures; g++) {
+            double[] gx = new double[length];
+            double[] gy = new double[length];
+            double[] gz = new double[length];
+            double fx = 1 + random.nextInt(3), fy = 1 + random.nextInt(3), fz = 1 + random.nextInt(3);
+            for (int i = 0; i < length; i++) {
+                double p = 2 * Math.PI * i / length;
+                gx[i] = 0.2 * Math.sin(fx * p);
+                gy[i] = 0.2 * Math.cos(fy * p);
+                gz[i] = 0.1 * Math.sin(fz * p + g);
+            }
+            engine.addGesture("gesture" + g, gx, gy, gz);
+        }
+        for (int i = 0; i < x.length; i++) {
+            double p = 2 * Math.PI * i / 45;
+            x[i] = 0.5 + 0.2 * Math.sin(p) + random.nextGaussian() * 0.01;
+            y[i] = 0.5 + 0.2 * Math.cos(p) + random.nextGaussian() * 0.01;
+            z[i] = 0.5 + random.nextGaussian() * 0.01;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void matchBatch() {
+        System.arraycopy(x, next, bx, 0, BATCH);
+        System.arraycopy(y, next, by, 0, BATCH);
+        System.arraycopy(z, next, bz, 0, BATCH);
+        long now = System.nanoTime();
+        for (int i = 0; i < BATCH; i++) {
+            timestamps[i] = now;
+        }
+        engine.accelerometerBatch(timestamps, bx, by, bz, BATCH, 0.5, 0.5, 0.5);
+        next = (next + BATCH) % STREAM;
+    }
+}
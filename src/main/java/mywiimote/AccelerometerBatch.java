@@ -0,0 +1,86 @@
+package mywiimote;
+
+/**
+ * Accumulates samples of the accelerometer for an
+ * {@link AccelerometerBatchListener}. It is for implementation sake. Does not
+ * matter for library users.
+ *
+ * Only used by the thread that delivers the events. The arrays are allocated
+ * once and reused for every batch.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class AccelerometerBatch {
+
+    private final AccelerometerBatchListener listener;
+
+    /**
+     * Maximum time, in nanoseconds, that a sample waits for the batch to be
+     * delivered.
+     */
+    private final long maxDelay;
+
+    private final long[] timestamps;
+    private final double[] x, y, z;
+    private int count = 0;
+    private double xBoundary, yBoundary, zBoundary;
+
+    /**
+     * @param listener the client.
+     * @param size number of samples of a full batch.
+     * @param maxDelay maximum time, in nanoseconds, that a sample waits for
+     * the batch to be delivered.
+     */
+    AccelerometerBatch(AccelerometerBatchListener listener, int size, long maxDelay) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be positive: " + size);
+        }
+        this.listener = listener;
+        this.maxDelay = maxDelay;
+        timestamps = new long[size];
+        x = new double[size];
+        y = new double[size];
+        z = new double[size];
+    }
+
+    /**
+     * Adds a sample. Delivers the batch if it gets full.
+     */
+    void add(long timestamp, double x, double y, double z, double xBoundary, double yBoundary, double zBoundary) {
+        if (count > 0 && (xBoundary != this.xBoundary || yBoundary != this.yBoundary || zBoundary != this.zBoundary)) {
+            //the boundaries are delivered once per batch, so a batch never mixes boundaries.
+            flush();
+        }
+        timestamps[count] = timestamp;
+        this.x[count] = x;
+        this.y[count] = y;
+        this.z[count] = z;
+        this.xBoundary = xBoundary;
+        this.yBoundary = yBoundary;
+        this.zBoundary = zBoundary;
+        count++;
+        if (count == timestamps.length) {
+            flush();
+        }
+    }
+
+    /**
+     * @return time (System.nanoTime) when the batch must be delivered, or
+     * Long.MAX_VALUE if the batch is empty.
+     */
+    long deadline() {
+        return count == 0 ? Long.MAX_VALUE : timestamps[0] + maxDelay;
+    }
+
+    /**
+     * Delivers the samples accumulated, if any.
+     */
+    void flush() {
+        if (count == 0) {
+            return;
+        }
+        int n = count;
+        count = 0;
+        listener.accelerometerBatch(timestamps, x, y, z, n, xBoundary, yBoundary, zBoundary);
+    }
+}
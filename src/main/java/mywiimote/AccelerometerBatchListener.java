@@ -0,0 +1,34 @@
+package mywiimote;
+
+/**
+ * Optional interface for clients that process the accelerometer in blocks of
+ * samples (e.g. signal processing), instead of one sample per call.
+ *
+ * When a batch listener is set in the driver, the samples of the accelerometer
+ * are delivered to it, in batches, instead of to
+ * {@link WiiMoteListener#accelerometerValues}. The buttons are still
+ * delivered to the WiiMoteListener, in order with the batches.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ * @see WiiMoteDriver#setBatchListener
+ */
+public interface AccelerometerBatchListener {
+
+    /**
+     * The listener will be notified with a batch of samples of the
+     * accelerometer. The arrays are reused by the driver: their content is
+     * only valid during the call, and only the first count positions are
+     * samples.
+     *
+     * @param timestamps time of each sample, from System.nanoTime().
+     * @param x values in x axis. Values between 0 and 1.
+     * @param y values in y axis. Values between 0 and 1.
+     * @param z values in z axis. Values between 0 and 1.
+     * @param count number of samples in the batch.
+     * @param xBoundary determines if the values of x should be considered positive acceleration or negative acceleration.
+     * @param yBoundary determines if the values of y should be considered positive acceleration or negative acceleration.
+     * @param zBoundary determines if the values of z should be considered positive acceleration or negative acceleration.
+     * @see WiiMoteListener#accelerometerValues
+     */
+    public void accelerometerBatch(long[] timestamps, double[] x, double[] y, double[] z, int count, double xBoundary, double yBoundary, double zBoundary);
+}
@@ -0,0 +1,43 @@
+package mywiimote;
+
+/**
+ * A stage of the pipeline that filters the accelerometer before the listener
+ * is notified. The stages are created by {@link AccelerometerFilters} and set
+ * in the driver by {@link WiiMoteDriver#setFilters}.
+ *
+ * A stage works in place on the values of the three axes, keeping its state
+ * in primitive fields, so the pipeline does not create objects. A stage is
+ * used by one driver only.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+public interface AccelerometerFilter {
+
+    /**
+     * Filters one sample.
+     *
+     * @param values values of x, y and z (between 0 and 1), changed in place.
+     * @param boundaries values of x, y and z without movement.
+     * @return true if the sample should go on to the next stage (and to the
+     * listener), false if the sample should be discarded.
+     */
+    public boolean filter(double[] values, double[] boundaries);
+
+    /**
+     * Forgets the state of the stage, e.g. when the wiimote is connected
+     * again.
+     */
+    public void reset();
+
+    /**
+     * Tells if the stage can be skipped when a sample is equal to the
+     * previous one, that is, if such a sample would give the same result
+     * without changing the state of the stage. Stages that smooth or count the
+     * samples must return false.
+     *
+     * @return true if repeated samples can be skipped. By default, false.
+     */
+    public default boolean isIdempotent() {
+        return false;
+    }
+}
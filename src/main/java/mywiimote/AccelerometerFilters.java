@@ -0,0 +1,274 @@
+package mywiimote;
+
+/**
+ * Creates the stages of the pipeline that filters the accelerometer.
+ *
+ * Every stage accepts one parameter per axis (x, y and z), or one parameter
+ * for the three axes.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ * @see WiiMoteDriver#setFilters
+ */
+public final class AccelerometerFilters {
+
+    private AccelerometerFilters() {
+    }
+
+    /**
+     * Dead zone: values closer to the boundary (the value without movement)
+     * than the width are replaced by the boundary. Removes the noise of a
+     * wiimote at rest.
+     *
+     * @param width width of the dead zone for the three axes.
+     * @return the stage.
+     */
+    public static AccelerometerFilter deadZone(double width) {
+        return deadZone(width, width, width);
+    }
+
+    /**
+     * Dead zone with one width per axis.
+     *
+     * @see #deadZone(double)
+     */
+    public static AccelerometerFilter deadZone(double x, double y, double z) {
+        return new DeadZone(x, y, z);
+    }
+
+    /**
+     * Hysteresis: an axis only changes when it moves more than the threshold
+     * from its last value passed on. If no axis changes, the sample is
+     * discarded. Unlike the sensitivity of WiiMoteListener, the threshold is
+     * absolute, so it behaves the same near zero.
+     *
+     * @param threshold threshold for the three axes.
+     * @return the stage.
+     */
+    public static AccelerometerFilter hysteresis(double threshold) {
+        return hysteresis(threshold, threshold, threshold);
+    }
+
+    /**
+     * Hysteresis with one threshold per axis.
+     *
+     * @see #hysteresis(double)
+     */
+    public static AccelerometerFilter hysteresis(double x, double y, double z) {
+        return new Hysteresis(x, y, z);
+    }
+
+    /**
+     * Exponential low-pass filter: smooths the values. Each new value moves
+     * the output by the factor of its distance.
+     *
+     * @param factor factor for the three axes, between 0 (nothing passes) and
+     * 1 (no filter).
+     * @return the stage.
+     */
+    public static AccelerometerFilter lowPass(double factor) {
+        return lowPass(factor, factor, factor);
+    }
+
+    /**
+     * Low-pass filter with one factor per axis.
+     *
+     * @see #lowPass(double)
+     */
+    public static AccelerometerFilter lowPass(double x, double y, double z) {
+        return new LowPass(x, y, z);
+    }
+
+    /**
+     * High-pass filter: removes the slow component of the values (e.g. the
+     * gravity), keeping the movements. The gravity is estimated by an
+     * exponential low-pass filter and subtracted; the result is centered on
+     * the boundary, so the values keep the meaning of the listener.
+     *
+     * @param factor factor of the estimation of the gravity for the three
+     * axes, between 0 and 1. Small values remove only the slowest component.
+     * @return the stage.
+     */
+    public static AccelerometerFilter highPass(double factor) {
+        return highPass(factor, factor, factor);
+    }
+
+    /**
+     * High-pass filter with one factor per axis.
+     *
+     * @see #highPass(double)
+     */
+    public static AccelerometerFilter highPass(double x, double y, double z) {
+        return new HighPass(x, y, z);
+    }
+
+    /**
+     * Decimation: passes one sample out of every n samples.
+     *
+     * @param n the ratio.
+     * @return the stage.
+     */
+    public static AccelerometerFilter decimation(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("n must be positive: " + n);
+        }
+        return new Decimation(n);
+    }
+
+    private static double[] factors(double x, double y, double z) {
+        for (double f : new double[]{x, y, z}) {
+            if (f < 0 || f > 1) {
+                throw new IllegalArgumentException("factor must be between 0 and 1: " + f);
+            }
+        }
+        return new double[]{x, y, z};
+    }
+
+    private static final class DeadZone implements AccelerometerFilter {
+
+        private final double[] width;
+
+        DeadZone(double x, double y, double z) {
+            width = new double[]{x, y, z};
+        }
+
+        @Override
+        public boolean filter(double[] values, double[] boundaries) {
+            for (int i = 0; i < 3; i++) {
+                if (Math.abs(values[i] - boundaries[i]) < width[i]) {
+                    values[i] = boundaries[i];
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void reset() {
+        }
+
+        @Override
+        public boolean isIdempotent() {
+            return true;
+        }
+    }
+
+    private static final class Hysteresis implements AccelerometerFilter {
+
+        private final double[] threshold;
+        private final double[] last = new double[3];
+        private boolean first = true;
+
+        Hysteresis(double x, double y, double z) {
+            threshold = new double[]{x, y, z};
+        }
+
+        @Override
+        public boolean filter(double[] values, double[] boundaries) {
+            if (first) {
+                first = false;
+                System.arraycopy(values, 0, last, 0, 3);
+                return true;
+            }
+            boolean changed = false;
+            for (int i = 0; i < 3; i++) {
+                if (Math.abs(values[i] - last[i]) > threshold[i]) {
+                    last[i] = values[i];
+                    changed = true;
+                } else {
+                    values[i] = last[i];
+                }
+            }
+            return changed;
+        }
+
+        @Override
+        public void reset() {
+            first = true;
+        }
+
+        @Override
+        public boolean isIdempotent() {
+            return true;
+        }
+    }
+
+    private static final class LowPass implements AccelerometerFilter {
+
+        private final double[] factor;
+        private final double[] output = new double[3];
+        private boolean first = true;
+
+        LowPass(double x, double y, double z) {
+            factor = factors(x, y, z);
+        }
+
+        @Override
+        public boolean filter(double[] values, double[] boundaries) {
+            if (first) {
+                first = false;
+                System.arraycopy(values, 0, output, 0, 3);
+                return true;
+            }
+            for (int i = 0; i < 3; i++) {
+                output[i] += (values[i] - output[i]) * factor[i];
+                values[i] = output[i];
+            }
+            return true;
+        }
+
+        @Override
+        public void reset() {
+            first = true;
+        }
+    }
+
+    private static final class HighPass implements AccelerometerFilter {
+
+        private final double[] factor;
+        private final double[] gravity = new double[3];
+        private boolean first = true;
+
+        HighPass(double x, double y, double z) {
+            factor = factors(x, y, z);
+        }
+
+        @Override
+        public boolean filter(double[] values, double[] boundaries) {
+            if (first) {
+                first = false;
+                System.arraycopy(values, 0, gravity, 0, 3);
+            }
+            for (int i = 0; i < 3; i++) {
+                gravity[i] += (values[i] - gravity[i]) * factor[i];
+                values[i] = values[i] - gravity[i] + boundaries[i];
+            }
+            return true;
+        }
+
+        @Override
+        public void reset() {
+            first = true;
+        }
+    }
+
+    private static final class Decimation implements AccelerometerFilter {
+
+        private final int n;
+        private int count = 0;
+
+        Decimation(int n) {
+            this.n = n;
+        }
+
+        @Override
+        public boolean filter(double[] values, double[] boundaries) {
+            boolean pass = count == 0;
+            count = (count + 1) % n;
+            return pass;
+        }
+
+        @Override
+        public void reset() {
+            count = 0;
+        }
+    }
+}
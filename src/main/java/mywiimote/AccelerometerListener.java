@@ -0,0 +1,23 @@
+package mywiimote;
+
+/**
+ * Subscriber of the accelerometer of the wiimote.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ * @see WiiMoteDriver#subscribe(AccelerometerListener, int)
+ */
+public interface AccelerometerListener {
+
+    /**
+     * The listener will be notified with the values of the accelerometer,
+     * after the sensitivity or the filters of the driver.
+     *
+     * @param x the x axis value.
+     * @param y the y axis value.
+     * @param z the z axis value.
+     * @param xBoundary the x axis value when the wiimote is not moving.
+     * @param yBoundary the y axis value when the wiimote is not moving.
+     * @param zBoundary the z axis value when the wiimote is not moving.
+     */
+    public void accelerometerValues(double x, double y, double z, double xBoundary, double yBoundary, double zBoundary);
+}
@@ -0,0 +1,88 @@
+package mywiimote;
+
+/**
+ * Holds one sample of the accelerometer. It is for implementation sake. Does
+ * not matter for library users.
+ *
+ * The same object is reused for every report, so the decoding does not create
+ * objects. The values have 10 bits: the 8 bits of the accelerometer bytes and
+ * the least significant bits carried in the unused bits of the buttons. They
+ * are normalized by a precomputed table instead of dividing on every report.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class AccelerometerSample {
+
+    /**
+     * Number of values of 10 bits.
+     */
+    static final int RANGE = 1024;
+
+    /**
+     * Normalized value (between 0 and 1) of every value of 10 bits.
+     */
+    static final double[] NORMALIZED = new double[RANGE];
+
+    static {
+        for (int i = 0; i < NORMALIZED.length; i++) {
+            NORMALIZED[i] = i / (double) RANGE;
+        }
+    }
+
+    /**
+     * Raw (unsigned, 10 bits) values received from the wiimote.
+     */
+    int rawX, rawY, rawZ;
+
+    /**
+     * Normalized values. Between 0 and 1.
+     */
+    double x, y, z;
+
+    /**
+     * Updates the sample with the accelerometer bytes of a report, without the
+     * least significant bits.
+     *
+     * @param bx byte of x axis.
+     * @param by byte of y axis.
+     * @param bz byte of z axis.
+     */
+    void set(byte bx, byte by, byte bz) {
+        set(bx, by, bz, (byte) 0, (byte) 0);
+    }
+
+    /**
+     * Updates the sample with the accelerometer bytes of a report and the
+     * least significant bits carried in the button bytes: bits 5 and 6 of the
+     * first byte are the bits 0 and 1 of x; bit 5 of the second byte is the
+     * bit 1 of y and bit 6 is the bit 1 of z.
+     *
+     * @param bx byte of x axis.
+     * @param by byte of y axis.
+     * @param bz byte of z axis.
+     * @param first first button byte.
+     * @param second second button byte.
+     */
+    void set(byte bx, byte by, byte bz, byte first, byte second) {
+        rawX = ((bx & 0xFF) << 2) | ((first >> 5) & 0x03);
+        rawY = ((by & 0xFF) << 2) | ((second >> 4) & 0x02);
+        rawZ = ((bz & 0xFF) << 2) | ((second >> 5) & 0x02);
+        x = NORMALIZED[rawX];
+        y = NORMALIZED[rawY];
+        z = NORMALIZED[rawZ];
+    }
+
+    /**
+     * Copies the values of another sample.
+     *
+     * @param other the sample to be copied.
+     */
+    void copy(AccelerometerSample other) {
+        rawX = other.rawX;
+        rawY = other.rawY;
+        rawZ = other.rawZ;
+        x = other.x;
+        y = other.y;
+        z = other.z;
+    }
+}
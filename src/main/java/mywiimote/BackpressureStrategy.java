@@ -0,0 +1,27 @@
+package mywiimote;
+
+/**
+ * Enumerates what a publisher should do when a reactive subscriber requests
+ * fewer events than the wiimote produces.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ * @see EventPublisher
+ */
+public enum BackpressureStrategy {
+
+    /**
+     * The oldest event waiting for demand is discarded to make room for the
+     * new one.
+     */
+    DROP_OLDEST,
+    /**
+     * Only the newest event waits for demand. Useful for values that replace
+     * the previous ones, as the accelerometer.
+     */
+    LATEST_ONLY,
+    /**
+     * Every event waits for demand. If the buffer fills up, the subscription
+     * fails with an error, since events would be lost.
+     */
+    BUFFER;
+}
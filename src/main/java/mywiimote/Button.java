@@ -1,10 +1,5 @@
 package mywiimote;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
 /**
  * Represents a Wiimote button. It is for implementation sake. Does not matter
  * for library users.
@@ -16,12 +11,6 @@ import java.util.logging.Logger;
  */
 class Button {
 
-    /**
-     * This constant indicates the minimal interval that indicates if the button
-     * is hold or not.
-     */
-    private static final long INTERVAL = 300;
-
     /**
      * Enum value of mapped button.
      */
@@ -32,11 +21,6 @@ class Button {
      */
     private WiiMoteListener listener;
 
-    /**
-     * Last time when the button was activated.
-     */
-    private long timestamp;
-
     /**
      * Default constructor.
      *
@@ -47,60 +31,86 @@ class Button {
     Button(WiiMoteListener listener, ButtonEnum button) {
         this.listener = listener;
         this.button = button;
-        timestamp = System.currentTimeMillis();
+    }
+
+    ButtonEnum getButton() {
+        return button;
     }
 
     /**
-     * This method is called when the button is pressed or released.
+     * This method is called on the report where the button goes down.
      */
-    void fire() {
-        long time = System.currentTimeMillis();
-        long dif = time - timestamp;
-        timestamp = System.currentTimeMillis();
-
-        /* if the button is already activated according to the interval, the event is discarted.*/
-        if (dif < INTERVAL) {
-            return;
+    void press() {
+        switch (button) {
+            case B1:
+                listener.button1Pressed();
+                break;
+            case B2:
+                listener.button2Pressed();
+                break;
+            case BA:
+                listener.buttonAPressed();
+                break;
+            case BB:
+                listener.buttonBPressed();
+                break;
+            case BM:
+                listener.buttonMinusPressed();
+                break;
+            case BP:
+                listener.buttonPlusPressed();
+                break;
+            case BL:
+                listener.buttonLeftPressed();
+                break;
+            case BR:
+                listener.buttonRightPressed();
+                break;
+            case BU:
+                listener.buttonUpPressed();
+                break;
+            case BD:
+                listener.buttonDownPressed();
+                break;
         }
+    }
 
-        /*
-         * This thread will be started when the button is fired. 
-         * The method will be invocated according to reflection technique.    
-         */
-        Thread thread = new Thread(() -> {
-            try {
-                Method m1 = listener.getClass().getMethod(button.toString() + "Pressed", null);
-                m1.invoke(listener, null);
-
-                long t;
-                long d;
-
-                do {
-                    Thread.sleep(100);
-                    t = System.currentTimeMillis();
-                    d = t - timestamp;
-
-                } while (d < INTERVAL); //while the button is activated, the client will not be notified about release event.   
-
-                Method m2 = listener.getClass().getMethod(button.toString() + "Released", null);
-                m2.invoke(listener, null);
-
-            } catch (IllegalAccessException ex) {
-                Logger.getLogger(Button.class.getName()).log(Level.SEVERE, null, ex);
-            } catch (IllegalArgumentException ex) {
-                Logger.getLogger(Button.class.getName()).log(Level.SEVERE, null, ex);
-            } catch (InvocationTargetException ex) {
-                Logger.getLogger(Button.class.getName()).log(Level.SEVERE, null, ex);
-            } catch (NoSuchMethodException ex) {
-                Logger.getLogger(Button.class.getName()).log(Level.SEVERE, null, ex);
-            } catch (SecurityException ex) {
-                Logger.getLogger(Button.class.getName()).log(Level.SEVERE, null, ex);
-            } catch (InterruptedException ex) {
-                Logger.getLogger(Button.class.getName()).log(Level.SEVERE, null, ex);
-            }
-        });
-        thread.start();
-
+    /**
+     * This method is called on the report where the button goes up.
+     */
+    void release() {
+        switch (button) {
+            case B1:
+                listener.button1Released();
+                break;
+            case B2:
+                listener.button2Released();
+                break;
+            case BA:
+                listener.buttonAReleased();
+                break;
+            case BB:
+                listener.buttonBReleased();
+                break;
+            case BM:
+                listener.buttonMinusReleased();
+                break;
+            case BP:
+                listener.buttonPlusReleased();
+                break;
+            case BL:
+                listener.buttonLeftReleased();
+                break;
+            case BR:
+                listener.buttonRightReleased();
+                break;
+            case BU:
+                listener.buttonUpReleased();
+                break;
+            case BD:
+                listener.buttonDownReleased();
+                break;
+        }
     }
 
 }
@@ -1,27 +1,37 @@
 package mywiimote;
 
 /**
- * Enum to map wiimote buttons.
+ * Enum to map wiimote buttons. Used by the subscribers of buttons.
+ * 
+ * The mask of each button refers to its bit in the 16-bit button word, built
+ * from the first (high) and the second (low) button bytes of the reports.
  * 
  * @author Pablo Rangel <pablorangel@gmail.com>
  */
-enum ButtonEnum {
+public enum ButtonEnum {
     
-    B1("button1"),
-    B2("button2"),
-    BA("buttonA"),
-    BB("buttonB"),
-    BM("buttonMinus"),
-    BP("buttonPlus"),
-    BL("buttonLeft"),
-    BR("buttonRight"),
-    BU("buttonUp"),
-    BD("buttonDown");
+    B1("button1", 0x0002),
+    B2("button2", 0x0001),
+    BA("buttonA", 0x0008),
+    BB("buttonB", 0x0004),
+    BM("buttonMinus", 0x0010),
+    BP("buttonPlus", 0x1000),
+    BL("buttonLeft", 0x0100),
+    BR("buttonRight", 0x0200),
+    BU("buttonUp", 0x0800),
+    BD("buttonDown", 0x0400);
     
     final private String label;
     
-    ButtonEnum (String label){
+    final private int mask;
+    
+    ButtonEnum (String label, int mask){
         this.label=label;
+        this.mask=mask;
+    }
+    
+    int getMask() {
+        return mask;
     }
     
     @Override
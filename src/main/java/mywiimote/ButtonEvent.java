@@ -0,0 +1,54 @@
+package mywiimote;
+
+/**
+ * Press or release of a button, as published to reactive subscribers.
+ * Immutable.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ * @see WiiMoteDriver#buttonEvents
+ */
+public final class ButtonEvent {
+
+    private final ButtonEnum button;
+    private final boolean pressed;
+    private final long timestamp;
+
+    /**
+     * Default constructor.
+     *
+     * @param button the button.
+     * @param pressed true if pressed, false if released.
+     * @param timestamp time of arrival of the report, from System.nanoTime().
+     */
+    public ButtonEvent(ButtonEnum button, boolean pressed, long timestamp) {
+        this.button = button;
+        this.pressed = pressed;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return the button.
+     */
+    public ButtonEnum getButton() {
+        return button;
+    }
+
+    /**
+     * @return true if pressed, false if released.
+     */
+    public boolean isPressed() {
+        return pressed;
+    }
+
+    /**
+     * @return time of arrival of the report, from System.nanoTime().
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return button + (pressed ? " pressed" : " released");
+    }
+}
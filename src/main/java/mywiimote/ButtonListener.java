@@ -0,0 +1,24 @@
+package mywiimote;
+
+/**
+ * Subscriber of the buttons of the wiimote.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ * @see WiiMoteDriver#subscribe(ButtonListener, int)
+ */
+public interface ButtonListener {
+
+    /**
+     * The listener will be notified when a button is pressed.
+     *
+     * @param button the button.
+     */
+    public void buttonPressed(ButtonEnum button);
+
+    /**
+     * The listener will be notified when a button is released.
+     *
+     * @param button the button.
+     */
+    public void buttonReleased(ButtonEnum button);
+}
@@ -0,0 +1,85 @@
+package mywiimote;
+
+/**
+ * Keeps the state of all wiimote buttons. It is for implementation sake. Does
+ * not matter for library users.
+ *
+ * The two button bytes of every report are joined in a 16-bit word. The word
+ * is compared (XOR) with the word of the previous report, so press and release
+ * events are raised on the exact report where the bit of the button flips.
+ * Chords (e.g. A+B) are just several bits set in the same word. The events
+ * are queued in the dispatcher, which notifies the client of the library.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class ButtonState {
+
+    /**
+     * Bits of the button word that carry buttons. The other bits carry the
+     * least significant bits of the accelerometer.
+     */
+    static final int BUTTONS_MASK = 0x1F1F;
+
+    /**
+     * Buttons indexed by the position of their bit in the button word.
+     */
+    private final ButtonEnum[] buttons = new ButtonEnum[16];
+
+    /**
+     * Delivers the events to the client of the library.
+     */
+    private final EventDispatcher dispatcher;
+
+    /**
+     * Button word of the previous report.
+     */
+    private int previous = 0;
+
+    /**
+     * Default constructor.
+     *
+     * @param dispatcher every button event will be queued in this
+     * dispatcher.
+     */
+    ButtonState(EventDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+        for (ButtonEnum b : ButtonEnum.values()) {
+            buttons[Integer.numberOfTrailingZeros(b.getMask())] = b;
+        }
+    }
+
+    /**
+     * Updates the state with the button bytes of a report and notifies every
+     * button that was pressed or released since the previous report.
+     *
+     * @param first first button byte (LEFT, RIGHT, DOWN, UP, PLUS).
+     * @param second second button byte (TWO, ONE, B, A, MINUS).
+     */
+    void update(byte first, byte second) {
+        int current = (((first & 0xFF) << 8) | (second & 0xFF)) & BUTTONS_MASK;
+        int changed = current ^ previous;
+        previous = current;
+        while (changed != 0) {
+            int bit = Integer.numberOfTrailingZeros(changed);
+            changed &= changed - 1;
+            dispatcher.button(buttons[bit], (current & (1 << bit)) != 0);
+        }
+    }
+
+    /**
+     * Releases every button that is still pressed. Should be called when the
+     * connection is lost, so the client does not keep a button held forever.
+     */
+    void releaseAll() {
+        //no report carries these events, so they happen now.
+        dispatcher.received(System.nanoTime());
+        update((byte) 0, (byte) 0);
+    }
+
+    /**
+     * @return the current button word.
+     */
+    int getWord() {
+        return previous;
+    }
+}
@@ -0,0 +1,81 @@
+package mywiimote;
+
+/**
+ * Factory calibration of the accelerometer, stored in the EEPROM of the
+ * wiimote. It is for implementation sake. Does not matter for library users.
+ *
+ * The calibration has the value of each axis without acceleration (zero) and
+ * with the acceleration of gravity (one g), in 10 bits. It is stored in 8
+ * bytes at the address 0x16 of the EEPROM: the 8 most significant bits of the
+ * zero of x, y and z, a byte with the least significant bits, and the same for
+ * one g.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class Calibration {
+
+    /**
+     * Address of the calibration in the EEPROM.
+     */
+    static final int ADDRESS = 0x16;
+
+    /**
+     * Size of the calibration in the EEPROM.
+     */
+    static final int SIZE = 8;
+
+    /**
+     * Calibration of a typical wiimote, used while the calibration of the
+     * wiimote is not available.
+     */
+    static final Calibration TYPICAL = parse(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, 0x00, (byte) 0x9a, (byte) 0x9a, (byte) 0x9a, 0x00}, 0);
+
+    final int zeroX, zeroY, zeroZ;
+    final int oneX, oneY, oneZ;
+
+    /**
+     * The bytes read from the EEPROM, kept to be cached.
+     */
+    private final byte[] data;
+
+    private Calibration(byte[] data) {
+        this.data = data;
+        zeroX = value(data[0], data[3] >> 4);
+        zeroY = value(data[1], data[3] >> 2);
+        zeroZ = value(data[2], data[3]);
+        oneX = value(data[4], data[7] >> 4);
+        oneY = value(data[5], data[7] >> 2);
+        oneZ = value(data[6], data[7]);
+    }
+
+    private static int value(byte high, int low) {
+        return ((high & 0xFF) << 2) | (low & 0x03);
+    }
+
+    /**
+     * @param data the bytes read from the EEPROM.
+     * @param offset position of the calibration in the array.
+     * @return the calibration, or null if the bytes are not a valid
+     * calibration.
+     */
+    static Calibration parse(byte[] data, int offset) {
+        if (data == null || data.length < offset + SIZE) {
+            return null;
+        }
+        byte[] copy = new byte[SIZE];
+        System.arraycopy(data, offset, copy, 0, SIZE);
+        Calibration calibration = new Calibration(copy);
+        //one g must be above zero in every axis, otherwise the EEPROM was not read correctly.
+        if (calibration.oneX <= calibration.zeroX || calibration.oneY <= calibration.zeroY || calibration.oneZ <= calibration.zeroZ) {
+            return null;
+        }
+        return calibration;
+    }
+
+    /**
+     * @return the bytes of the calibration, as stored in the EEPROM.
+     */
+    byte[] toBytes() {
+        return data.clone();
+    }
+}
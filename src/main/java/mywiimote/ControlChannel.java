@@ -0,0 +1,134 @@
+package mywiimote;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Handles the control reports of the wiimote (status, data read and
+ * acknowledgements) in a low priority thread. It is for implementation sake.
+ * Does not matter for library users.
+ *
+ * The thread receiving data only copies the report into a ring of reusable
+ * buffers and goes back to the data reports, so the control traffic (which
+ * may send reports, parse the memory and notify futures) never delays the
+ * input.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class ControlChannel implements Runnable {
+
+    /**
+     * Receives the control reports, in the thread of the channel.
+     */
+    interface Handler {
+
+        void control(byte[] report, int length);
+    }
+
+    private static final int CAPACITY = 64;
+
+    private final Handler handler;
+
+    private final byte[][] reports = new byte[CAPACITY][ReportMode.MAX_REPORT_SIZE];
+    private final int[] lengths = new int[CAPACITY];
+    private int head = 0;
+    private int size = 0;
+
+    /**
+     * Number of reports discarded because the ring was full.
+     */
+    private long dropped = 0;
+
+    private Thread thread = null;
+
+    ControlChannel(Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Queues a control report. Never waits: if the ring is full, the report
+     * is discarded.
+     *
+     * @param report the report.
+     * @param length size of the report.
+     */
+    synchronized void offer(byte[] report, int length) {
+        if (size == CAPACITY) {
+            dropped++;
+            return;
+        }
+        int i = (head + size) % CAPACITY;
+        int n = Math.min(length, ReportMode.MAX_REPORT_SIZE);
+        System.arraycopy(report, 0, reports[i], 0, n);
+        lengths[i] = n;
+        size++;
+        if (thread == null) {
+            thread = new Thread(this, "mywiimote-control");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.start();
+        } else if (size == 1) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Discards the waiting reports and stops the thread. A report offered
+     * later starts a new one.
+     */
+    synchronized void close() {
+        head = 0;
+        size = 0;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * @return number of control reports discarded because too many were
+     * waiting.
+     */
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Loop of the thread that handles the reports.
+     */
+    @Override
+    public void run() {
+        byte[] report = new byte[ReportMode.MAX_REPORT_SIZE];
+        while (true) {
+            int length;
+            synchronized (this) {
+                Thread current = Thread.currentThread();
+                while (size == 0 && thread == current) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        if (thread == current) {
+                            Logger.getLogger(ControlChannel.class.getName()).log(Level.SEVERE, null, ex);
+                            thread = null;
+                        }
+                        return;
+                    }
+                }
+                if (thread != current) {
+                    //closed.
+                    return;
+                }
+                length = lengths[head];
+                System.arraycopy(reports[head], 0, report, 0, length);
+                head = (head + 1) % CAPACITY;
+                size--;
+            }
+            try {
+                handler.control(report, length);
+            } catch (RuntimeException ex) {
+                //a failure must not stop the handling of the next reports.
+                Logger.getLogger(ControlChannel.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+}
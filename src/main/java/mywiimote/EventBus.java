@@ -0,0 +1,131 @@
+package mywiimote;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Fans the events out to the subscribers. It is for implementation sake. Does
+ * not matter for library users.
+ *
+ * The subscribers of each kind of event are kept in an array that is replaced
+ * (never changed) when a subscriber comes or goes, so publishing an event is a
+ * loop over an array, without locks or objects created. The reactive
+ * publishers need an object per event, which is only created when they have
+ * subscribers.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class EventBus {
+
+    private static final Subscription[] NONE = new Subscription[0];
+
+    private volatile Subscription[] buttons = NONE;
+    private volatile Subscription[] accelerometers = NONE;
+
+    private final CopyOnWriteArrayList<EventPublisher<ButtonEvent>> buttonPublishers = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<EventPublisher<MotionSample>> motionPublishers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Adds a subscriber and starts its thread.
+     */
+    synchronized void add(Subscription subscription) {
+        if (subscription.hasButtons()) {
+            buttons = added(buttons, subscription);
+        }
+        if (subscription.hasAccelerometer()) {
+            accelerometers = added(accelerometers, subscription);
+        }
+        subscription.start();
+    }
+
+    /**
+     * Removes a subscriber, if present.
+     */
+    synchronized void remove(Subscription subscription) {
+        if (subscription.hasButtons()) {
+            buttons = removed(buttons, subscription);
+        }
+        if (subscription.hasAccelerometer()) {
+            accelerometers = removed(accelerometers, subscription);
+        }
+    }
+
+    /**
+     * Creates a publisher of the buttons.
+     */
+    EventPublisher<ButtonEvent> buttonPublisher(BackpressureStrategy strategy, int capacity, Executor executor) {
+        EventPublisher<ButtonEvent> publisher = new EventPublisher<>(strategy, capacity, executor, buttonPublishers);
+        buttonPublishers.add(publisher);
+        return publisher;
+    }
+
+    /**
+     * Creates a publisher of the accelerometer.
+     */
+    EventPublisher<MotionSample> motionPublisher(BackpressureStrategy strategy, int capacity, Executor executor) {
+        EventPublisher<MotionSample> publisher = new EventPublisher<>(strategy, capacity, executor, motionPublishers);
+        motionPublishers.add(publisher);
+        return publisher;
+    }
+
+    /**
+     * @param time time of arrival of the report, from System.nanoTime().
+     */
+    void button(ButtonEnum button, boolean pressed, long time) {
+        Subscription[] all = buttons;
+        for (int i = 0; i < all.length; i++) {
+            all[i].button(button, pressed);
+        }
+        if (!buttonPublishers.isEmpty()) {
+            ButtonEvent event = null;
+            for (EventPublisher<ButtonEvent> publisher : buttonPublishers) {
+                if (publisher.hasSubscribers()) {
+                    if (event == null) {
+                        event = new ButtonEvent(button, pressed, time);
+                    }
+                    publisher.submit(event);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param time time of arrival of the report, from System.nanoTime().
+     */
+    void accelerometer(double x, double y, double z, double xBoundary, double yBoundary, double zBoundary, long time) {
+        Subscription[] all = accelerometers;
+        for (int i = 0; i < all.length; i++) {
+            all[i].accelerometer(x, y, z, xBoundary, yBoundary, zBoundary);
+        }
+        if (!motionPublishers.isEmpty()) {
+            MotionSample sample = null;
+            for (EventPublisher<MotionSample> publisher : motionPublishers) {
+                if (publisher.hasSubscribers()) {
+                    if (sample == null) {
+                        sample = new MotionSample(x, y, z, xBoundary, yBoundary, zBoundary, time);
+                    }
+                    publisher.submit(sample);
+                }
+            }
+        }
+    }
+
+    private static Subscription[] added(Subscription[] all, Subscription subscription) {
+        Subscription[] copy = new Subscription[all.length + 1];
+        System.arraycopy(all, 0, copy, 0, all.length);
+        copy[all.length] = subscription;
+        return copy;
+    }
+
+    private static Subscription[] removed(Subscription[] all, Subscription subscription) {
+        for (int i = 0; i < all.length; i++) {
+            if (all[i] == subscription) {
+                Subscription[] copy = new Subscription[all.length - 1];
+                System.arraycopy(all, 0, copy, 0, i);
+                System.arraycopy(all, i + 1, copy, i, all.length - i - 1);
+                return copy;
+            }
+        }
+        return all;
+    }
+}
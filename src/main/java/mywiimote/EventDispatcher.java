@@ -0,0 +1,638 @@
+package mywiimote;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers the events to the client of the library. It is for implementation
+ * sake. Does not matter for library users.
+ *
+ * The events are stored in a bounded queue (a ring of primitive arrays, so no
+ * object is created per event) and one dedicated thread drains it, calling the
+ * listener in the same order the reports were received. The thread receiving
+ * data from the wiimote never runs the code of the client. The events are
+ * also published to the subscribers, which have their own queues.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class EventDispatcher implements Runnable {
+
+    /**
+     * Default capacity of the queue.
+     */
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int NONE = -1;
+    private static final int PRESSED = 0;
+    private static final int RELEASED = 1;
+    private static final int ACCELEROMETER = 2;
+    private static final int ORIENTATION = 3;
+    private static final int NUNCHUK = 4;
+    private static final int POINTER = 5;
+
+    /*
+     * Codes of the events of the Nunchuk.
+     */
+    static final int NUNCHUK_VALUES = 0;
+    static final int NUNCHUK_CONNECTED = 1;
+    static final int NUNCHUK_DISCONNECTED = 2;
+    static final int NUNCHUK_C_PRESSED = 3;
+    static final int NUNCHUK_C_RELEASED = 4;
+    static final int NUNCHUK_Z_PRESSED = 5;
+    static final int NUNCHUK_Z_RELEASED = 6;
+
+    /**
+     * Buttons indexed by the ordinal of the ButtonEnum.
+     */
+    private final Button[] buttons;
+
+    /**
+     * Library client. Every event will be notified to this listener.
+     */
+    private final WiiMoteListener listener;
+
+    /**
+     * What to do when the queue is full.
+     */
+    private final OverflowPolicy policy;
+
+    /*
+     * The queue. One position of each array per event.
+     */
+    private final int[] kinds;
+    private final int[] codes;
+    private final double[] values;
+    private final long[] times;
+
+    /**
+     * Number of states changed by a pair of events: the buttons of the
+     * wiimote, the buttons C and Z of the Nunchuk and its connection.
+     */
+    private static final int KEYS = ButtonEnum.values().length + 3;
+
+    /**
+     * First position of each state found while looking for a pair of
+     * transitions to discard. Kept here so the overflow creates no object.
+     */
+    private final int[] seen = new int[KEYS];
+
+    private final int capacity;
+    private int head = 0;
+    private int size = 0;
+
+    /**
+     * Number of events discarded because of the overflow policy.
+     */
+    private long dropped = 0;
+
+    private boolean running = false;
+
+    private Thread thread = null;
+
+    /**
+     * Batches the samples of the accelerometer, if a batch listener is set.
+     */
+    private volatile AccelerometerBatch batch = null;
+
+    /**
+     * Client of the tilt of the wiimote, if set.
+     */
+    private volatile OrientationListener orientationListener = null;
+
+    /**
+     * Client of the Nunchuk, if set.
+     */
+    private volatile NunchukListener nunchukListener = null;
+
+    /**
+     * Client of the pointer, if set.
+     */
+    private volatile PointerListener pointerListener = null;
+
+    /**
+     * Time (System.nanoTime) of arrival of the report being interpreted. Only
+     * used by the thread receiving data.
+     */
+    private long received = 0;
+
+    /**
+     * Time from the arrival of the report until the event is delivered.
+     */
+    private final LatencyHistogram latency;
+
+    /**
+     * Subscribers of the events, besides the listener.
+     */
+    private final EventBus bus;
+
+    /**
+     * Default constructor.
+     *
+     * @param listener client of the library.
+     * @param capacity maximum number of events waiting to be delivered. Must
+     * be greater than the number of states changed by pairs of events (13:
+     * the buttons, the buttons of the Nunchuk and its connection), so a full
+     * queue of transitions always holds a pair that can be discarded.
+     * @param policy what to do when the queue is full.
+     * @param latency records the time from the arrival of the report until the
+     * event is delivered.
+     * @param bus subscribers of the events.
+     */
+    EventDispatcher(WiiMoteListener listener, int capacity, OverflowPolicy policy, LatencyHistogram latency, EventBus bus) {
+        if (capacity <= KEYS) {
+            throw new IllegalArgumentException("capacity must be greater than " + KEYS + ": " + capacity);
+        }
+        this.listener = listener;
+        this.policy = policy;
+        this.latency = latency;
+        this.bus = bus;
+        this.capacity = capacity;
+        kinds = new int[capacity];
+        codes = new int[capacity];
+        values = new double[capacity * 6];
+        times = new long[capacity];
+        ButtonEnum[] all = ButtonEnum.values();
+        buttons = new Button[all.length];
+        for (ButtonEnum b : all) {
+            buttons[b.ordinal()] = new Button(listener, b);
+        }
+    }
+
+    /**
+     * Starts the thread that delivers the events, if not started yet.
+     */
+    synchronized void start() {
+        running = true;
+        if (thread != null) {
+            //the thread is still alive (maybe draining after a stop), reuse it.
+            return;
+        }
+        thread = new Thread(this, "mywiimote-dispatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the thread that delivers the events. The events already queued are
+     * still delivered.
+     */
+    synchronized void stop() {
+        running = false;
+        notifyAll();
+    }
+
+    /**
+     * Sets the batch listener. From now on, the samples of the accelerometer
+     * are delivered in batches to it, instead of to the listener.
+     *
+     * @param batch the batch, or null to deliver the samples to the listener
+     * again.
+     */
+    synchronized void setBatch(AccelerometerBatch batch) {
+        this.batch = batch;
+        notifyAll();
+    }
+
+    /**
+     * @param orientationListener client of the tilt of the wiimote, or null.
+     */
+    void setOrientationListener(OrientationListener orientationListener) {
+        this.orientationListener = orientationListener;
+    }
+
+    /**
+     * @return true if there is a client of the tilt of the wiimote.
+     */
+    boolean hasOrientationListener() {
+        return orientationListener != null;
+    }
+
+    /**
+     * @param nunchukListener client of the Nunchuk, or null.
+     */
+    void setNunchukListener(NunchukListener nunchukListener) {
+        this.nunchukListener = nunchukListener;
+    }
+
+    /**
+     * @param pointerListener client of the pointer, or null.
+     */
+    void setPointerListener(PointerListener pointerListener) {
+        this.pointerListener = pointerListener;
+    }
+
+    /**
+     * Queues the position of the pointer.
+     */
+    synchronized void pointer(double x, double y, boolean visible) {
+        int i = reserve(POINTER, 0);
+        if (i < 0) {
+            return;
+        }
+        kinds[i] = POINTER;
+        codes[i] = visible ? 1 : 0;
+        times[i] = received;
+        int v = i * 6;
+        values[v] = x;
+        values[v + 1] = y;
+        commit();
+    }
+
+    /**
+     * Queues an event of the Nunchuk without values (connection or button).
+     *
+     * @param code the code of the event (NUNCHUK_*).
+     */
+    synchronized void nunchuk(int code) {
+        int i = reserve(NUNCHUK, code);
+        if (i < 0) {
+            return;
+        }
+        kinds[i] = NUNCHUK;
+        codes[i] = code;
+        times[i] = received;
+        commit();
+    }
+
+    /**
+     * Queues the values of the stick and of the accelerometer of the Nunchuk.
+     */
+    synchronized void nunchuk(double stickX, double stickY, double x, double y, double z) {
+        int i = reserve(NUNCHUK, NUNCHUK_VALUES);
+        if (i < 0) {
+            return;
+        }
+        kinds[i] = NUNCHUK;
+        codes[i] = NUNCHUK_VALUES;
+        times[i] = received;
+        int v = i * 6;
+        values[v] = stickX;
+        values[v + 1] = stickY;
+        values[v + 2] = x;
+        values[v + 3] = y;
+        values[v + 4] = z;
+        commit();
+    }
+
+    /**
+     * Sets the time of arrival of the report whose events will be queued next.
+     *
+     * @param nanos time of arrival, from System.nanoTime().
+     */
+    void received(long nanos) {
+        received = nanos;
+    }
+
+    /**
+     * Queues the tilt of the wiimote.
+     */
+    synchronized void orientation(double pitch, double roll) {
+        int i = reserve(ORIENTATION, 0);
+        if (i < 0) {
+            return;
+        }
+        kinds[i] = ORIENTATION;
+        times[i] = received;
+        int v = i * 6;
+        values[v] = pitch;
+        values[v + 1] = roll;
+        commit();
+    }
+
+    /**
+     * Queues the press or the release of a button.
+     *
+     * @param button the button.
+     * @param pressed true if pressed, false if released.
+     */
+    void button(ButtonEnum button, boolean pressed) {
+        bus.button(button, pressed, received);
+        queue(button, pressed);
+    }
+
+    private synchronized void queue(ButtonEnum button, boolean pressed) {
+        int kind = pressed ? PRESSED : RELEASED;
+        int i = reserve(kind, button.ordinal());
+        if (i < 0) {
+            return;
+        }
+        kinds[i] = kind;
+        codes[i] = button.ordinal();
+        times[i] = received;
+        commit();
+    }
+
+    /**
+     * Queues the values of the accelerometer.
+     */
+    void accelerometer(double x, double y, double z, double xBoundary, double yBoundary, double zBoundary) {
+        bus.accelerometer(x, y, z, xBoundary, yBoundary, zBoundary, received);
+        queue(x, y, z, xBoundary, yBoundary, zBoundary);
+    }
+
+    private synchronized void queue(double x, double y, double z, double xBoundary, double yBoundary, double zBoundary) {
+        int i = reserve(ACCELEROMETER, 0);
+        if (i < 0) {
+            return;
+        }
+        kinds[i] = ACCELEROMETER;
+        times[i] = received;
+        int v = i * 6;
+        values[v] = x;
+        values[v + 1] = y;
+        values[v + 2] = z;
+        values[v + 3] = xBoundary;
+        values[v + 4] = yBoundary;
+        values[v + 5] = zBoundary;
+        commit();
+    }
+
+    /**
+     * @return number of events discarded because the queue was full.
+     */
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Finds the position of the queue for a new event, according to the
+     * overflow policy. Must be called holding the lock.
+     *
+     * A transition (a press, a release, or the connection of the Nunchuk) is
+     * only discarded together with the next transition of the same state, so
+     * the listener never sees two presses or two releases in a row.
+     *
+     * @param kind kind of the new event.
+     * @param code code of the new event.
+     * @return the position, or -1 if the event must be discarded.
+     */
+    private int reserve(int kind, int code) {
+        if (size == capacity && policy == OverflowPolicy.BLOCK) {
+            try {
+                while (size == capacity && running) {
+                    wait();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (size == capacity && !discard(key(kind, code) >= 0, policy == OverflowPolicy.DROP_OLDEST)) {
+            dropped++;
+            return -1;
+        }
+        return (head + size) % capacity;
+    }
+
+    /**
+     * @return the state changed by the event, or -1 if the event only has
+     * values (accelerometer, tilt, Nunchuk, pointer).
+     */
+    private int key(int kind, int code) {
+        switch (kind) {
+            case PRESSED:
+            case RELEASED:
+                return code;
+            case NUNCHUK:
+                //connected and disconnected, C pressed and released, Z pressed and released.
+                return code == NUNCHUK_VALUES ? -1 : buttons.length + (code - 1) / 2;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Makes room in the full queue. The events with values go first: the
+     * oldest ones with DROP_OLDEST, otherwise the newest ones and only to keep
+     * a new transition. When the queue holds only transitions, two
+     * consecutive transitions of the same state are discarded.
+     *
+     * @param transition true if the new event is a transition.
+     * @param oldest true to discard from the head of the queue.
+     * @return false if the new event must be discarded instead.
+     */
+    private boolean discard(boolean transition, boolean oldest) {
+        if (!transition && !oldest) {
+            return false;
+        }
+        for (int k = 0; k < size; k++) {
+            int n = oldest ? k : size - 1 - k;
+            int i = (head + n) % capacity;
+            if (key(kinds[i], codes[i]) < 0) {
+                remove(n);
+                dropped++;
+                return true;
+            }
+        }
+        if (!transition) {
+            return false;
+        }
+        //the capacity is greater than the number of states, so a state repeats.
+        Arrays.fill(seen, -1);
+        for (int k = 0; k < size; k++) {
+            int n = oldest ? k : size - 1 - k;
+            int i = (head + n) % capacity;
+            int key = key(kinds[i], codes[i]);
+            if (seen[key] < 0) {
+                seen[key] = n;
+                continue;
+            }
+            remove(Math.max(n, seen[key]));
+            remove(Math.min(n, seen[key]));
+            dropped += 2;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes the event at the given position of the queue, counted from its
+     * head, moving the events of the shorter side into its place.
+     */
+    private void remove(int n) {
+        if (n < size / 2) {
+            for (; n > 0; n--) {
+                move((head + n - 1) % capacity, (head + n) % capacity);
+            }
+            head = (head + 1) % capacity;
+        } else {
+            for (; n < size - 1; n++) {
+                move((head + n + 1) % capacity, (head + n) % capacity);
+            }
+        }
+        size--;
+    }
+
+    private void move(int from, int to) {
+        kinds[to] = kinds[from];
+        codes[to] = codes[from];
+        times[to] = times[from];
+        System.arraycopy(values, from * 6, values, to * 6, 6);
+    }
+
+    private void commit() {
+        size++;
+        if (size == 1) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Loop of the thread that delivers the events.
+     */
+    @Override
+    public void run() {
+        double x = 0, y = 0, z = 0, xBoundary = 0, yBoundary = 0, zBoundary = 0;
+        long time = 0;
+        AccelerometerBatch current = null;
+        while (true) {
+            int kind = NONE;
+            int code = 0;
+            AccelerometerBatch due = null;
+            synchronized (this) {
+                while (true) {
+                    if (current != batch) {
+                        //the batch listener changed: deliver what was accumulated for the previous one.
+                        due = current;
+                        current = batch;
+                        break;
+                    }
+                    if (size > 0) {
+                        kind = kinds[head];
+                        code = codes[head];
+                        time = times[head];
+                        if (kind >= ACCELEROMETER) {
+                            int v = head * 6;
+                            x = values[v];
+                            y = values[v + 1];
+                            z = values[v + 2];
+                            xBoundary = values[v + 3];
+                            yBoundary = values[v + 4];
+                            zBoundary = values[v + 5];
+                        }
+                        head = (head + 1) % capacity;
+                        if (size-- == capacity) {
+                            notifyAll();
+                        }
+                        break;
+                    }
+                    if (!running) {
+                        deliver(current);
+                        thread = null;
+                        return;
+                    }
+                    long deadline = current == null ? Long.MAX_VALUE : current.deadline();
+                    long remaining = deadline - System.nanoTime();
+                    if (deadline != Long.MAX_VALUE && remaining <= 0) {
+                        //the oldest sample of the batch waited enough.
+                        due = current;
+                        break;
+                    }
+                    try {
+                        if (deadline == Long.MAX_VALUE) {
+                            wait();
+                        } else {
+                            wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+                        }
+                    } catch (InterruptedException ex) {
+                        Logger.getLogger(EventDispatcher.class.getName()).log(Level.SEVERE, null, ex);
+                        //the producers waiting for room must not wait forever.
+                        running = false;
+                        thread = null;
+                        notifyAll();
+                        return;
+                    }
+                }
+            }
+            deliver(due);
+            try {
+                switch (kind) {
+                    case NONE:
+                        break;
+                    case PRESSED:
+                        //the samples before the button are delivered before it, keeping the order.
+                        deliver(current);
+                        buttons[code].press();
+                        break;
+                    case RELEASED:
+                        deliver(current);
+                        buttons[code].release();
+                        break;
+                    case ORIENTATION:
+                        OrientationListener o = orientationListener;
+                        if (o != null) {
+                            o.orientation(x, y);
+                        }
+                        break;
+                    case NUNCHUK:
+                        nunchuk(code, x, y, z, xBoundary, yBoundary);
+                        break;
+                    case POINTER:
+                        PointerListener p = pointerListener;
+                        if (p != null) {
+                            p.pointer(x, y, code != 0);
+                        }
+                        break;
+                    default:
+                        if (current != null) {
+                            current.add(time, x, y, z, xBoundary, yBoundary, zBoundary);
+                        } else {
+                            listener.accelerometerValues(x, y, z, xBoundary, yBoundary, zBoundary);
+                        }
+                }
+                if (kind != NONE) {
+                    latency.record(System.nanoTime() - time);
+                }
+            } catch (RuntimeException ex) {
+                //a failure of the client must not stop the delivery of the next events.
+                Logger.getLogger(EventDispatcher.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    /**
+     * Notifies the client of the Nunchuk, if set.
+     */
+    private void nunchuk(int code, double stickX, double stickY, double x, double y, double z) {
+        NunchukListener n = nunchukListener;
+        if (n == null) {
+            return;
+        }
+        switch (code) {
+            case NUNCHUK_VALUES:
+                n.nunchukValues(stickX, stickY, x, y, z);
+                break;
+            case NUNCHUK_CONNECTED:
+                n.nunchukConnected();
+                break;
+            case NUNCHUK_DISCONNECTED:
+                n.nunchukDisconnected();
+                break;
+            case NUNCHUK_C_PRESSED:
+                n.buttonCPressed();
+                break;
+            case NUNCHUK_C_RELEASED:
+                n.buttonCReleased();
+                break;
+            case NUNCHUK_Z_PRESSED:
+                n.buttonZPressed();
+                break;
+            default:
+                n.buttonZReleased();
+        }
+    }
+
+    /**
+     * Delivers the samples accumulated in the batch, if any.
+     */
+    private void deliver(AccelerometerBatch batch) {
+        if (batch == null) {
+            return;
+        }
+        try {
+            batch.flush();
+        } catch (RuntimeException ex) {
+            Logger.getLogger(EventDispatcher.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package mywiimote;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes the events of a wiimote to reactive subscribers
+ * ({@link java.util.concurrent.Flow}).
+ *
+ * Each subscriber has its own buffer and receives the events only as it
+ * requests them, from a thread of the executor. The thread receiving data from
+ * the wiimote only puts the event in the buffers and never waits for a
+ * subscriber: when a subscriber does not request fast enough, the strategy of
+ * the publisher decides which events wait.
+ *
+ * @param <T> type of the events.
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ * @see WiiMoteDriver#buttonEvents
+ * @see WiiMoteDriver#motionSamples
+ */
+public class EventPublisher<T> implements Flow.Publisher<T> {
+
+    private final BackpressureStrategy strategy;
+    private final int capacity;
+    private final Executor executor;
+    private final Collection<EventPublisher<T>> publishers;
+
+    private final CopyOnWriteArrayList<Link> links = new CopyOnWriteArrayList<>();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Default constructor.
+     *
+     * @param strategy what to do when a subscriber does not request fast
+     * enough.
+     * @param capacity maximum number of events waiting for each subscriber.
+     * @param executor runs the delivery to the subscribers.
+     * @param publishers publishers fed by the driver. The publisher leaves it
+     * when closed.
+     */
+    EventPublisher(BackpressureStrategy strategy, int capacity, Executor executor, Collection<EventPublisher<T>> publishers) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.strategy = Objects.requireNonNull(strategy);
+        this.capacity = capacity;
+        this.executor = Objects.requireNonNull(executor);
+        this.publishers = publishers;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+        Link link = new Link(subscriber);
+        if (!closed) {
+            links.add(link);
+        }
+        synchronized (link) {
+            link.completed = closed;
+            link.schedule();
+        }
+    }
+
+    /**
+     * @return true if there is any subscriber.
+     */
+    boolean hasSubscribers() {
+        return !links.isEmpty();
+    }
+
+    /**
+     * Offers an event to every subscriber. Never waits for a subscriber.
+     */
+    void submit(T item) {
+        for (Link link : links) {
+            link.offer(item);
+        }
+    }
+
+    /**
+     * Completes every subscription after the events already waiting are
+     * delivered. The events of the wiimote are not published anymore.
+     */
+    public void close() {
+        closed = true;
+        publishers.remove(this);
+        for (Link link : links) {
+            link.complete();
+        }
+        links.clear();
+    }
+
+    /**
+     * @return true if closed.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return number of subscribers.
+     */
+    public int getNumberOfSubscribers() {
+        return links.size();
+    }
+
+    /**
+     * Subscription of one subscriber: its buffer, its demand and the delivery
+     * of its signals, one at a time.
+     */
+    private class Link implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super T> subscriber;
+        private final ArrayDeque<T> buffer = new ArrayDeque<>();
+
+        private long demand = 0;
+        private boolean subscribed = false;
+        private boolean scheduled = false;
+        private boolean cancelled = false;
+        private boolean completed = false;
+        private Throwable error = null;
+
+        Link(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        synchronized void offer(T item) {
+            if (cancelled || completed || error != null) {
+                return;
+            }
+            if (buffer.size() == capacity) {
+                switch (strategy) {
+                    case BUFFER:
+                        error = new IllegalStateException("more than " + capacity + " events waiting for demand");
+                        buffer.clear();
+                        schedule();
+                        return;
+                    default:
+                        buffer.poll();
+                }
+            } else if (strategy == BackpressureStrategy.LATEST_ONLY) {
+                buffer.clear();
+            }
+            buffer.add(item);
+            if (demand > 0) {
+                schedule();
+            }
+        }
+
+        synchronized void complete() {
+            completed = true;
+            schedule();
+        }
+
+        @Override
+        public synchronized void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("non-positive request: " + n);
+                buffer.clear();
+            } else {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                buffer.clear();
+            }
+            links.remove(this);
+        }
+
+        /**
+         * Runs the delivery, if not running yet. Must be called holding the
+         * lock.
+         */
+        private void schedule() {
+            if (scheduled || cancelled) {
+                return;
+            }
+            scheduled = true;
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException ex) {
+                scheduled = false;
+                cancelled = true;
+                Logger.getLogger(EventPublisher.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+
+        /**
+         * Delivers the signals while there is demand.
+         */
+        @Override
+        public void run() {
+            if (!subscribed) {
+                subscribed = true;
+                try {
+                    subscriber.onSubscribe(this);
+                } catch (RuntimeException ex) {
+                    fail(ex);
+                    return;
+                }
+            }
+            while (true) {
+                T item = null;
+                Throwable failure = null;
+                boolean done = false;
+                synchronized (this) {
+                    if (cancelled) {
+                        scheduled = false;
+                        return;
+                    }
+                    if (error != null) {
+                        failure = error;
+                        cancelled = true;
+                    } else if (demand > 0 && !buffer.isEmpty()) {
+                        item = buffer.poll();
+                        demand--;
+                    } else if (completed && buffer.isEmpty()) {
+                        done = true;
+                        cancelled = true;
+                    } else {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                if (failure != null) {
+                    links.remove(this);
+                    subscriber.onError(failure);
+                } else if (done) {
+                    subscriber.onComplete();
+                } else {
+                    try {
+                        subscriber.onNext(item);
+                    } catch (RuntimeException ex) {
+                        fail(ex);
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Cancels the subscription because the subscriber failed.
+         */
+        private void fail(RuntimeException ex) {
+            Logger.getLogger(EventPublisher.class.getName()).log(Level.SEVERE, null, ex);
+            synchronized (this) {
+                cancelled = true;
+                scheduled = false;
+                buffer.clear();
+            }
+            links.remove(this);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package mywiimote;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Recognizes gestures in the stream of the accelerometer.
+ *
+ * The gestures are recorded by the user (or given as arrays of values) and
+ * the stream is matched against all of them by streaming dynamic time warping,
+ * so the work per sample is bounded by the length of the gestures and a
+ * gesture is found wherever it starts in the stream. When there are many
+ * gestures, they are matched in parallel on a fork/join pool.
+ *
+ * The engine receives the samples in batches. To use it, set it as the batch
+ * listener of the driver:
+ *
+ * <pre>
+ * GestureEngine engine = new GestureEngine(gestureListener);
+ * driver.setBatchListener(engine, 10, 20);
+ * </pre>
+ *
+ * The gesture listener is notified by the thread that delivers the events of
+ * the driver.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+public class GestureEngine implements AccelerometerBatchListener {
+
+    /**
+     * Default threshold: maximum average distance per sample between the
+     * movement and the gesture.
+     */
+    public static final double DEFAULT_THRESHOLD = 0.05;
+
+    /**
+     * Number of gestures matched by each task of the fork/join pool.
+     */
+    private static final int GESTURES_PER_TASK = 8;
+
+    private final GestureListener listener;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * The gestures. Replaced (never changed) when a gesture is added or
+     * removed.
+     */
+    private volatile GestureTemplate[] templates = new GestureTemplate[0];
+
+    /**
+     * Index in the stream of the next sample.
+     */
+    private long index = 0;
+
+    /*
+     * Values of the batch relative to the boundaries. Reused for every batch.
+     */
+    private double[] rx = new double[0], ry = new double[0], rz = new double[0];
+
+    /*
+     * Gesture being recorded.
+     */
+    private final Object recordingLock = new Object();
+    private String recordingName = null;
+    private double recordingThreshold;
+    private final List<double[]> recording = new ArrayList<>();
+
+    /**
+     * Default constructor. The gestures are matched on the common fork/join
+     * pool.
+     *
+     * @param listener client of the gesture recognition.
+     */
+    public GestureEngine(GestureListener listener) {
+        this(listener, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param listener client of the gesture recognition.
+     * @param pool pool where the gestures are matched.
+     */
+    public GestureEngine(GestureListener listener, ForkJoinPool pool) {
+        this.listener = listener;
+        this.pool = pool;
+    }
+
+    /**
+     * Adds a gesture with the default threshold.
+     *
+     * @see #addGesture(String, double[], double[], double[], double)
+     */
+    public void addGesture(String name, double[] x, double[] y, double[] z) {
+        addGesture(name, x, y, z, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Adds a gesture. A gesture with the same name is replaced.
+     *
+     * @param name name of the gesture.
+     * @param x values of x, relative to the boundary of x.
+     * @param y values of y, relative to the boundary of y.
+     * @param z values of z, relative to the boundary of z.
+     * @param threshold maximum average distance per sample between the
+     * movement and the gesture.
+     */
+    public synchronized void addGesture(String name, double[] x, double[] y, double[] z, double threshold) {
+        GestureTemplate template = new GestureTemplate(name, x, y, z, threshold);
+        List<GestureTemplate> list = new ArrayList<>(Arrays.asList(templates));
+        list.removeIf((t) -> t.name.equals(name));
+        list.add(template);
+        templates = list.toArray(new GestureTemplate[0]);
+    }
+
+    /**
+     * Removes a gesture.
+     *
+     * @param name name of the gesture.
+     * @return true if the gesture was removed. False if it did not exist.
+     */
+    public synchronized boolean removeGesture(String name) {
+        List<GestureTemplate> list = new ArrayList<>(Arrays.asList(templates));
+        boolean removed = list.removeIf((t) -> t.name.equals(name));
+        templates = list.toArray(new GestureTemplate[0]);
+        return removed;
+    }
+
+    /**
+     * @return number of gestures.
+     */
+    public int getGestureCount() {
+        return templates.length;
+    }
+
+    /**
+     * Starts recording a gesture with the default threshold. The samples
+     * received from now on are the gesture, until stopRecording is called.
+     *
+     * @param name name of the gesture.
+     */
+    public void startRecording(String name) {
+        startRecording(name, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Starts recording a gesture.
+     *
+     * @param name name of the gesture.
+     * @param threshold maximum average distance per sample between the
+     * movement and the gesture.
+     */
+    public void startRecording(String name, double threshold) {
+        synchronized (recordingLock) {
+            recordingName = name;
+            recordingThreshold = threshold;
+            recording.clear();
+        }
+    }
+
+    /**
+     * Stops recording and adds the gesture recorded.
+     *
+     * @return true if the gesture was added. False if nothing was recorded.
+     */
+    public boolean stopRecording() {
+        String name;
+        double threshold;
+        double[] x, y, z;
+        synchronized (recordingLock) {
+            name = recordingName;
+            threshold = recordingThreshold;
+            recordingName = null;
+            if (name == null || recording.isEmpty()) {
+                return false;
+            }
+            int n = recording.size();
+            x = new double[n];
+            y = new double[n];
+            z = new double[n];
+            for (int i = 0; i < n; i++) {
+                double[] v = recording.get(i);
+                x[i] = v[0];
+                y[i] = v[1];
+                z[i] = v[2];
+            }
+            recording.clear();
+        }
+        addGesture(name, x, y, z, threshold);
+        return true;
+    }
+
+    /**
+     * Matches a batch of samples against every gesture and notifies the
+     * gestures found.
+     */
+    @Override
+    public void accelerometerBatch(long[] timestamps, double[] x, double[] y, double[] z, int count, double xBoundary, double yBoundary, double zBoundary) {
+        if (rx.length < count) {
+            rx = new double[timestamps.length];
+            ry = new double[timestamps.length];
+            rz = new double[timestamps.length];
+        }
+        for (int i = 0; i < count; i++) {
+            rx[i] = x[i] - xBoundary;
+            ry[i] = y[i] - yBoundary;
+            rz[i] = z[i] - zBoundary;
+        }
+        synchronized (recordingLock) {
+            if (recordingName != null) {
+                for (int i = 0; i < count; i++) {
+                    recording.add(new double[]{rx[i], ry[i], rz[i]});
+                }
+            }
+        }
+        GestureTemplate[] all = templates;
+        if (all.length <= GESTURES_PER_TASK) {
+            for (GestureTemplate template : all) {
+                template.match(index, timestamps, rx, ry, rz, count);
+            }
+        } else {
+            pool.invoke(new MatchTask(all, 0, all.length, index, timestamps, rx, ry, rz, count));
+        }
+        index += count;
+        for (GestureTemplate template : all) {
+            if (template.found) {
+                template.found = false;
+                try {
+                    listener.gestureRecognized(template.name, template.foundConfidence, System.nanoTime() - template.foundTime);
+                } catch (RuntimeException ex) {
+                    Logger.getLogger(GestureEngine.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Task of the fork/join pool: matches a range of gestures against the
+     * batch, splitting the range while it is big.
+     */
+    private static final class MatchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final GestureTemplate[] all;
+        private final int from, to;
+        private final long first;
+        private final long[] timestamps;
+        private final double[] x, y, z;
+        private final int count;
+
+        MatchTask(GestureTemplate[] all, int from, int to, long first, long[] timestamps, double[] x, double[] y, double[] z, int count) {
+            this.all = all;
+            this.from = from;
+            this.to = to;
+            this.first = first;
+            this.timestamps = timestamps;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.count = count;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= GESTURES_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    all[i].match(first, timestamps, x, y, z, count);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new MatchTask(all, from, middle, first, timestamps, x, y, z, count),
+                    new MatchTask(all, middle, to, first, timestamps, x, y, z, count));
+        }
+    }
+}
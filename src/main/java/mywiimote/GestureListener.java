@@ -0,0 +1,22 @@
+package mywiimote;
+
+/**
+ * Interface for clients of the gesture recognition.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ * @see GestureEngine
+ */
+public interface GestureListener {
+
+    /**
+     * The listener will be notified when a movement of the wiimote matches one
+     * of the gestures of the engine.
+     *
+     * @param name name of the gesture.
+     * @param confidence how close the movement is to the gesture. Between 0
+     * (at the threshold) and 1 (identical).
+     * @param latency time, in nanoseconds, between the last sample of the
+     * movement and the notification.
+     */
+    public void gestureRecognized(String name, double confidence, long latency);
+}
@@ -0,0 +1,172 @@
+package mywiimote;
+
+import java.util.Arrays;
+
+/**
+ * A gesture recorded by the user, matched against the stream of the
+ * accelerometer. It is for implementation sake. Does not matter for library
+ * users.
+ *
+ * The matching is a streaming (subsequence) dynamic time warping, as in the
+ * SPRING algorithm: for every new sample, one column of the warping matrix is
+ * computed from the previous one, so the work per sample is proportional to
+ * the length of the gesture, and a match can start at any sample of the
+ * stream. Each cell keeps the sample where its warping path started. A match
+ * is reported when its distance can not be improved by any path still
+ * open.
+ *
+ * Only one thread at a time uses a template.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class GestureTemplate {
+
+    final String name;
+
+    /**
+     * Maximum average distance per sample of the gesture for a match.
+     */
+    final double threshold;
+
+    /**
+     * The gesture: values of x, y and z relative to the boundaries.
+     */
+    private final double[] x, y, z;
+
+    private final int length;
+
+    /*
+     * Column of the warping matrix for the previous and the current sample:
+     * accumulated distance and sample where the path started.
+     */
+    private double[] distance, nextDistance;
+    private long[] start, nextStart;
+
+    /*
+     * Best match not reported yet.
+     */
+    private double candidate = Double.POSITIVE_INFINITY;
+    private long candidateEnd = -1;
+    private long candidateTime = 0;
+
+    /*
+     * Match found during the last batch, waiting to be notified.
+     */
+    boolean found = false;
+    double foundConfidence = 0;
+    long foundTime = 0;
+
+    /**
+     * @param name name of the gesture.
+     * @param x values of x relative to the boundary.
+     * @param y values of y relative to the boundary.
+     * @param z values of z relative to the boundary.
+     * @param threshold maximum average distance per sample for a match.
+     */
+    GestureTemplate(String name, double[] x, double[] y, double[] z, double threshold) {
+        if (x.length == 0 || x.length != y.length || x.length != z.length) {
+            throw new IllegalArgumentException("the gesture must have the same (non zero) number of values in every axis");
+        }
+        this.name = name;
+        this.threshold = threshold;
+        this.x = x.clone();
+        this.y = y.clone();
+        this.z = z.clone();
+        length = x.length;
+        distance = new double[length + 1];
+        nextDistance = new double[length + 1];
+        start = new long[length + 1];
+        nextStart = new long[length + 1];
+        reset();
+    }
+
+    /**
+     * Forgets the stream matched so far.
+     */
+    void reset() {
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        distance[0] = 0;
+        candidate = Double.POSITIVE_INFINITY;
+        candidateEnd = -1;
+        found = false;
+    }
+
+    /**
+     * Matches the gesture against a batch of samples.
+     *
+     * @param first index in the stream of the first sample of the batch.
+     * @param timestamps time of each sample.
+     * @param sx values of x relative to the boundary.
+     * @param sy values of y relative to the boundary.
+     * @param sz values of z relative to the boundary.
+     * @param count number of samples.
+     */
+    void match(long first, long[] timestamps, double[] sx, double[] sy, double[] sz, int count) {
+        double limit = threshold * length;
+        for (int t = 0; t < count; t++) {
+            long index = first + t;
+            double vx = sx[t], vy = sy[t], vz = sz[t];
+            nextDistance[0] = 0;
+            nextStart[0] = index;
+            for (int i = 1; i <= length; i++) {
+                double dx = vx - x[i - 1], dy = vy - y[i - 1], dz = vz - z[i - 1];
+                double cost = Math.sqrt(dx * dx + dy * dy + dz * dz);
+                //best of: insertion (same sample, previous point), match (previous sample and point), deletion (previous sample, same point).
+                double best = nextDistance[i - 1];
+                long from = nextStart[i - 1];
+                if (distance[i - 1] < best) {
+                    best = distance[i - 1];
+                    from = start[i - 1];
+                }
+                if (distance[i] < best) {
+                    best = distance[i];
+                    from = start[i];
+                }
+                nextDistance[i] = cost + best;
+                nextStart[i] = from;
+            }
+
+            //a candidate is confirmed when no open path that started before its end can beat it.
+            if (candidateEnd >= 0) {
+                boolean confirmed = true;
+                for (int i = 1; i <= length; i++) {
+                    if (nextDistance[i] < candidate && nextStart[i] <= candidateEnd) {
+                        confirmed = false;
+                        break;
+                    }
+                }
+                if (confirmed) {
+                    report();
+                    for (int i = 1; i <= length; i++) {
+                        if (nextStart[i] <= candidateEnd) {
+                            nextDistance[i] = Double.POSITIVE_INFINITY;
+                        }
+                    }
+                    candidate = Double.POSITIVE_INFINITY;
+                    candidateEnd = -1;
+                }
+            }
+            if (nextDistance[length] <= limit && nextDistance[length] < candidate) {
+                candidate = nextDistance[length];
+                candidateEnd = index;
+                candidateTime = timestamps[t];
+            }
+
+            double[] d = distance;
+            distance = nextDistance;
+            nextDistance = d;
+            long[] s = start;
+            start = nextStart;
+            nextStart = s;
+        }
+    }
+
+    private void report() {
+        double confidence = 1.0 - candidate / (threshold * length);
+        if (!found || confidence > foundConfidence) {
+            found = true;
+            foundConfidence = confidence;
+            foundTime = candidateTime;
+        }
+    }
+}
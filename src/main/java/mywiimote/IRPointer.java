@@ -0,0 +1,292 @@
+package mywiimote;
+
+/**
+ * Turns the data of the IR camera into the position of a pointer on the
+ * screen. It is for implementation sake. Does not matter for library users.
+ *
+ * The camera reports up to four bright spots (1024x768), read in place from
+ * the report in the basic (10 bytes), the extended (12 bytes) or the full
+ * (36 bytes, split in the two interleaved reports) format. The
+ * two spots of the sensor bar give the position: their midpoint, rotated
+ * around the center of the camera so the roll of the wiimote does not move
+ * the pointer, and mirrored (aiming right moves the spots left). The area of
+ * the camera that covers the screen maps the position to the screen, and an
+ * alpha-beta filter (a light Kalman filter with fixed gains) smooths it: each
+ * measure corrects the position predicted from the previous position and
+ * velocity. The pointer is kept while the sensor bar is briefly out of sight.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class IRPointer {
+
+    static final int WIDTH = 1024;
+    static final int HEIGHT = 768;
+
+    /**
+     * Value of the mode register of the camera for each format.
+     */
+    static final int BASIC = 1;
+    static final int EXTENDED = 3;
+
+    /**
+     * Default gains of the filter: weight of the measure in the position and
+     * in the velocity.
+     */
+    static final double DEFAULT_ALPHA = 0.5;
+    static final double DEFAULT_BETA = 0.1;
+
+    /**
+     * How long the sensor bar can be out of sight before the pointer is
+     * considered lost, in nanoseconds.
+     */
+    private static final long LOST_LIMIT = 100_000_000L;
+
+    private final EventDispatcher dispatcher;
+
+    /*
+     * Spots of the current report. Only the first count are valid.
+     */
+    private final int[] spotX = new int[4];
+    private final int[] spotY = new int[4];
+    private final int[] spotSize = new int[4];
+    private int count = 0;
+
+    /**
+     * True after the first half of the full format, until the second.
+     */
+    private boolean half = false;
+
+    /*
+     * Area of the camera (normalized, after the mirroring) that covers the
+     * screen.
+     */
+    private volatile double left = 0.1;
+    private volatile double top = 0.1;
+    private volatile double right = 0.9;
+    private volatile double bottom = 0.9;
+
+    private volatile double alpha = DEFAULT_ALPHA;
+    private volatile double beta = DEFAULT_BETA;
+
+    /*
+     * State of the filter.
+     */
+    private double x = 0.5;
+    private double y = 0.5;
+    private double vx = 0;
+    private double vy = 0;
+    private long lastTime = 0;
+    private long lastSeen = 0;
+    private boolean visible = false;
+    private boolean tracking = false;
+
+    /**
+     * Latest position (two floats, x in the high bits) and visibility, for the
+     * clients that poll. Packed so the pair is read at once.
+     */
+    private volatile long latest = pack(0.5, 0.5);
+    private volatile boolean latestVisible = false;
+
+    IRPointer(EventDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Sets the area of the camera that covers the screen, in normalized
+     * coordinates of the pointer before the mapping (0 to 1).
+     */
+    void setArea(double left, double top, double right, double bottom) {
+        if (left >= right || top >= bottom) {
+            throw new IllegalArgumentException("empty area");
+        }
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    void setGains(double alpha, double beta) {
+        if (alpha <= 0 || alpha > 1 || beta < 0 || beta > 1) {
+            throw new IllegalArgumentException("gains must be between 0 and 1");
+        }
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    /**
+     * Forgets the position, e.g. when the camera is enabled again.
+     */
+    void reset() {
+        tracking = false;
+        visible = false;
+        latestVisible = false;
+    }
+
+    /**
+     * Interprets the data of the camera.
+     *
+     * @param report the report.
+     * @param offset position of the data of the camera in the report.
+     * @param length size of the data: 10 (basic format) or 12 (extended).
+     * @param time time of arrival of the report, from System.nanoTime().
+     */
+    void decode(byte[] report, int offset, int length, long time) {
+        count = 0;
+        if (length >= 12) {
+            for (int i = 0; i < 4; i++) {
+                int p = offset + i * 3;
+                int b2 = report[p + 2] & 0xFF;
+                spot((report[p] & 0xFF) | ((b2 & 0x30) << 4), (report[p + 1] & 0xFF) | ((b2 & 0xC0) << 2), b2 & 0x0F);
+            }
+        } else {
+            for (int i = 0; i < 2; i++) {
+                int p = offset + i * 5;
+                int b2 = report[p + 2] & 0xFF;
+                spot((report[p] & 0xFF) | ((b2 & 0x30) << 4), (report[p + 1] & 0xFF) | ((b2 & 0xC0) << 2), 0);
+                spot((report[p + 3] & 0xFF) | ((b2 & 0x03) << 8), (report[p + 4] & 0xFF) | ((b2 & 0x0C) << 6), 0);
+            }
+        }
+        track(time);
+    }
+
+    /**
+     * Interprets half of the data of the camera in the full format: two spots
+     * of 9 bytes, whose first 3 bytes are those of the extended format. The
+     * position is updated with the second half.
+     *
+     * @param report the report.
+     * @param offset position of the data of the camera in the report.
+     * @param second true if the report carries the second half (0x3f).
+     * @param time time of arrival of the report, from System.nanoTime().
+     */
+    void decodeFull(byte[] report, int offset, boolean second, long time) {
+        if (!second || !half) {
+            //a first half, or a second half whose first was lost.
+            count = 0;
+        }
+        for (int i = 0; i < 2; i++) {
+            int p = offset + i * 9;
+            int b2 = report[p + 2] & 0xFF;
+            spot((report[p] & 0xFF) | ((b2 & 0x30) << 4), (report[p + 1] & 0xFF) | ((b2 & 0xC0) << 2), b2 & 0x0F);
+        }
+        half = !second;
+        if (second) {
+            track(time);
+        }
+    }
+
+    private void spot(int sx, int sy, int size) {
+        if (sx >= WIDTH || sy >= HEIGHT) {
+            //empty slot (all bits set).
+            return;
+        }
+        spotX[count] = sx;
+        spotY[count] = sy;
+        spotSize[count] = size;
+        count++;
+    }
+
+    /**
+     * Updates the filter with the spots of the report and notifies the new
+     * position.
+     */
+    private void track(long time) {
+        double dt = tracking ? Math.max(1, time - lastTime) / 1e9 : 0;
+        lastTime = time;
+        boolean seen = count >= 2;
+        if (seen) {
+            //the sensor bar is the pair of the two biggest spots (the first two when the size is unknown).
+            int a = spotSize[1] > spotSize[0] ? 1 : 0;
+            int b = 1 - a;
+            for (int i = 2; i < count; i++) {
+                if (spotSize[i] > spotSize[a]) {
+                    b = a;
+                    a = i;
+                } else if (spotSize[i] > spotSize[b]) {
+                    b = i;
+                }
+            }
+            double dx = spotX[b] - spotX[a];
+            double dy = spotY[b] - spotY[a];
+            if (dx < 0) {
+                dx = -dx;
+                dy = -dy;
+            }
+            double distance = Math.sqrt(dx * dx + dy * dy);
+            double cos = dx / distance;
+            double sin = dy / distance;
+            //midpoint relative to the center of the camera, rotated back by the roll of the wiimote.
+            double mx = (spotX[a] + spotX[b]) / 2.0 - WIDTH / 2.0;
+            double my = (spotY[a] + spotY[b]) / 2.0 - HEIGHT / 2.0;
+            double rx = mx * cos + my * sin;
+            double ry = my * cos - mx * sin;
+            double nx = 0.5 - rx / WIDTH;
+            double ny = 0.5 + ry / HEIGHT;
+            double sx = (nx - left) / (right - left);
+            double sy = (ny - top) / (bottom - top);
+            if (!tracking) {
+                x = sx;
+                y = sy;
+                vx = 0;
+                vy = 0;
+                tracking = true;
+            } else {
+                double px = x + vx * dt;
+                double py = y + vy * dt;
+                double ex = sx - px;
+                double ey = sy - py;
+                double a1 = alpha;
+                double b1 = beta;
+                x = px + a1 * ex;
+                y = py + a1 * ey;
+                vx += b1 * ex / dt;
+                vy += b1 * ey / dt;
+            }
+            lastSeen = time;
+        } else if (tracking && time - lastSeen < LOST_LIMIT) {
+            //a brief loss (e.g. a spot hidden for a report): keeps the position.
+            vx = 0;
+            vy = 0;
+            return;
+        } else {
+            tracking = false;
+            if (visible) {
+                visible = false;
+                publish();
+            }
+            return;
+        }
+        visible = true;
+        publish();
+    }
+
+    private void publish() {
+        double cx = Math.max(0, Math.min(1, x));
+        double cy = Math.max(0, Math.min(1, y));
+        long packed = pack(cx, cy);
+        if (packed == latest && visible == latestVisible) {
+            return;
+        }
+        latest = packed;
+        latestVisible = visible;
+        dispatcher.pointer(cx, cy, visible);
+    }
+
+    /**
+     * Copies the latest position of the pointer.
+     *
+     * @param position receives x and y.
+     * @return true if the sensor bar is in sight.
+     */
+    boolean getLatest(double[] position) {
+        boolean v = latestVisible;
+        long l = latest;
+        position[0] = Float.intBitsToFloat((int) (l >>> 32));
+        position[1] = Float.intBitsToFloat((int) l);
+        return v;
+    }
+
+    private static long pack(double x, double y) {
+        return ((long) Float.floatToRawIntBits((float) x) << 32) | (Float.floatToRawIntBits((float) y) & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,150 @@
+package mywiimote;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of the wiimotes already connected. It is for implementation sake.
+ * Does not matter for library users.
+ *
+ * The cache is a text file with the bluetooth address of one wiimote per line,
+ * the most recent first, optionally followed by the calibration of its
+ * accelerometer in hexadecimal. With the address, the driver can connect
+ * directly to the wiimote, without the inquiry; with the calibration, it does
+ * not need to read the EEPROM again.
+ *
+ * There is one instance per file, shared by every driver, so two drivers
+ * never overwrite the changes of each other.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class KnownDevices {
+
+    /**
+     * Maximum number of wiimotes in the cache.
+     */
+    private static final int MAX_DEVICES = 16;
+
+    /**
+     * The instances, by absolute path of the file.
+     */
+    private static final ConcurrentMap<Path, KnownDevices> CACHES = new ConcurrentHashMap<>();
+
+    /**
+     * The cache file.
+     */
+    private final Path file;
+
+    private KnownDevices(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @param file the cache file. Created when the first wiimote is
+     * remembered.
+     * @return the instance of the file.
+     */
+    static KnownDevices of(Path file) {
+        return CACHES.computeIfAbsent(file.toAbsolutePath().normalize(), KnownDevices::new);
+    }
+
+    /**
+     * @return the cache in the home of the user: ~/.mywiimote/devices.
+     */
+    static KnownDevices inUserHome() {
+        return of(Paths.get(System.getProperty("user.home"), ".mywiimote", "devices"));
+    }
+
+    /**
+     * @return the addresses of the wiimotes in the cache, the most recent
+     * first. Empty if the cache does not exist or can not be read.
+     */
+    synchronized List<String> addresses() {
+        List<String> addresses = new ArrayList<>();
+        for (String[] entry : entries()) {
+            addresses.add(entry[0]);
+        }
+        return addresses;
+    }
+
+    /**
+     * @param address bluetooth address of the wiimote.
+     * @return the calibration of the accelerometer of the wiimote, or null if
+     * it is not in the cache.
+     */
+    synchronized Calibration calibration(String address) {
+        for (String[] entry : entries()) {
+            if (entry[0].equals(address)) {
+                return entry.length > 1 ? Calibration.parse(Util.hexToByteArray(entry[1]), 0) : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Puts the wiimote at the top of the cache, keeping its calibration.
+     *
+     * @param address bluetooth address of the wiimote.
+     */
+    synchronized void remember(String address) {
+        remember(address, calibration(address));
+    }
+
+    /**
+     * Puts the wiimote at the top of the cache, with the calibration of its
+     * accelerometer.
+     *
+     * @param address bluetooth address of the wiimote.
+     * @param calibration the calibration, or null if unknown.
+     */
+    synchronized void remember(String address, Calibration calibration) {
+        List<String> lines = new ArrayList<>();
+        lines.add(calibration == null ? address : address + " " + Util.byteArrayToHex(calibration.toBytes()));
+        for (String[] entry : entries()) {
+            if (!entry[0].equals(address) && lines.size() < MAX_DEVICES) {
+                lines.add(String.join(" ", entry));
+            }
+        }
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Files.write(file, lines, StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            Logger.getLogger(KnownDevices.class.getName()).log(Level.WARNING, null, ex);
+        }
+    }
+
+    /**
+     * @return the lines of the cache, split in fields, without repeated
+     * addresses.
+     */
+    private List<String[]> entries() {
+        List<String[]> entries = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return entries;
+        }
+        try {
+            List<String> seen = new ArrayList<>();
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] fields = line.trim().split("\\s+");
+                if (!fields[0].isEmpty() && !seen.contains(fields[0])) {
+                    seen.add(fields[0]);
+                    entries.add(fields);
+                }
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(KnownDevices.class.getName()).log(Level.WARNING, null, ex);
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,101 @@
+package mywiimote;
+
+import static mywiimote.Util.hexToByteArray;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.bluetooth.L2CAPConnection;
+import javax.microedition.io.Connector;
+
+/**
+ * Transport over the two L2CAP connections of the wiimote protocol. It is for
+ * implementation sake. Does not matter for library users.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class L2CAPTransport implements Transport {
+
+    /**
+     * L2CAP Connection for controlling. Still figuring out what for... Useless
+     * for now.
+     */
+    private final L2CAPConnection controlPipe;
+
+    /**
+     * L2CAP Connection for sending and receiving data.
+     */
+    private final L2CAPConnection dataPipe;
+
+    private L2CAPTransport(L2CAPConnection controlPipe, L2CAPConnection dataPipe) {
+        this.controlPipe = controlPipe;
+        this.dataPipe = dataPipe;
+    }
+
+    /**
+     * Opens the connections with the wiimote: one for control and another for
+     * data. Then performs the pairing.
+     *
+     * @param address bluetooth address of the wiimote.
+     * @return the transport.
+     * @throws IOException if the connections could not be opened.
+     */
+    static L2CAPTransport open(String address) throws IOException {
+        String controlAddress = "btl2cap://" + address + ":11;authenticate=false;encrypt=false;master=false";
+        String dataAddress = "btl2cap://" + address + ":13;authenticate=false;encrypt=false;master=false";
+        L2CAPConnection controlPipe = (L2CAPConnection) Connector.open(controlAddress);
+        L2CAPConnection dataPipe;
+        try {
+            dataPipe = (L2CAPConnection) Connector.open(dataAddress);
+        } catch (IOException e) {
+            controlPipe.close();
+            throw e;
+        }
+        L2CAPTransport transport = new L2CAPTransport(controlPipe, dataPipe);
+        transport.pairing(address);
+        return transport;
+    }
+
+    /**
+     * Method for paring process. Should be called just after the connection.
+     *
+     * The message includes the bluetooth address of wiimote backwards.
+     *
+     * @param address bluetooth address of the wiimote.
+     */
+    private void pairing(String address) {
+        String val6 = address.substring(10, 12);
+        String val5 = address.substring(8, 10);
+        String val4 = address.substring(6, 8);
+        String val3 = address.substring(4, 6);
+        String val2 = address.substring(2, 4);
+        String val1 = address.substring(0, 2);
+
+        String inverseAddress = val6 + val5 + val4 + val3 + val2 + val1;
+
+        byte[] data = hexToByteArray(inverseAddress);
+        try {
+            controlPipe.send(data);
+        } catch (IOException ex) {
+            Logger.getLogger(L2CAPTransport.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    @Override
+    public void send(byte[] report) throws IOException {
+        dataPipe.send(report);
+    }
+
+    @Override
+    public int receive(byte[] buffer) throws IOException {
+        return dataPipe.receive(buffer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            controlPipe.close();
+        } finally {
+            dataPipe.close();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package mywiimote;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds. It is for implementation sake. Does
+ * not matter for library users.
+ *
+ * There is one bucket per power of two, so recording a duration is a few
+ * atomic increments: no lock and no object is created. The percentiles are
+ * interpolated inside the bucket, which is precise enough to tell 100
+ * microseconds from 10 milliseconds.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class LatencyHistogram {
+
+    /**
+     * Bucket i counts the durations between 2^(i-1) and 2^i - 1 (bucket 0
+     * counts the zeros).
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos the duration. Negative durations are counted as zero.
+     */
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long m = max.get();
+        while (nanos > m && !max.compareAndSet(m, nanos)) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     * @return the duration below which the percentile of the durations is, in
+     * nanoseconds, or 0 if nothing was recorded.
+     */
+    double percentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        double rank = Math.max(1, Math.ceil(n * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < 64; i++) {
+            long c = buckets.get(i);
+            if (c > 0 && seen + c >= rank) {
+                if (i == 0) {
+                    return 0;
+                }
+                double low = 1L << (i - 1);
+                double high = Math.min(low * 2, max.get() + 1);
+                return low + (high - low) * (rank - seen) / c;
+            }
+            seen += c;
+        }
+        return max.get();
+    }
+
+    /**
+     * @return number of durations recorded.
+     */
+    long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return average duration in nanoseconds, or 0 if nothing was recorded.
+     */
+    double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) total.get() / n;
+    }
+
+    /**
+     * @return the longest duration in nanoseconds.
+     */
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Forgets the durations recorded. Durations recorded at the same time may
+     * be partially forgotten.
+     */
+    void reset() {
+        for (int i = 0; i < 64; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+}
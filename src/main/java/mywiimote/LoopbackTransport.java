@@ -0,0 +1,151 @@
+package mywiimote;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * In-memory transport. Plays the role of the wiimote inside the JVM: the
+ * reports delivered by {@link #deliver(byte[])} are received by the driver,
+ * and the reports sent by the driver can be taken by {@link #takeSent()}.
+ *
+ * Useful to exercise and to measure the library without a wiimote or a
+ * bluetooth stack. The received reports are kept in a bounded ring of
+ * preallocated buffers, so delivering and receiving do not create objects.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+public class LoopbackTransport implements Transport {
+
+    /*
+     * Reports waiting to be received by the driver.
+     */
+    private final byte[][] reports;
+    private final int[] lengths;
+    private int head = 0;
+    private int size = 0;
+
+    /**
+     * Last reports sent by the driver. Oldest are discarded.
+     */
+    private final byte[][] sent;
+    private int sentHead = 0;
+    private int sentSize = 0;
+
+    private boolean closed = false;
+
+    /**
+     * Default constructor. Up to 1024 reports can wait to be received.
+     */
+    public LoopbackTransport() {
+        this(1024);
+    }
+
+    /**
+     * @param capacity maximum number of reports waiting to be received.
+     */
+    public LoopbackTransport(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        reports = new byte[capacity][ReportMode.MAX_REPORT_SIZE];
+        lengths = new int[capacity];
+        sent = new byte[64][];
+    }
+
+    /**
+     * Delivers a report to the driver, as if it was sent by the wiimote. Waits
+     * while there is no room for the report.
+     *
+     * @param report the report, including the header byte (0xa1).
+     * @throws IOException if the transport is closed.
+     */
+    public void deliver(byte[] report) throws IOException {
+        deliver(report, 0, report.length);
+    }
+
+    /**
+     * Delivers part of an array as a report to the driver.
+     *
+     * @param data array holding the report.
+     * @param offset position of the first byte of the report.
+     * @param length size of the report.
+     * @throws IOException if the transport is closed.
+     */
+    public synchronized void deliver(byte[] data, int offset, int length) throws IOException {
+        while (size == reports.length && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted", ex);
+            }
+        }
+        if (closed) {
+            throw new IOException("transport closed");
+        }
+        int i = (head + size) % reports.length;
+        int n = Math.min(length, ReportMode.MAX_REPORT_SIZE);
+        System.arraycopy(data, offset, reports[i], 0, n);
+        lengths[i] = n;
+        size++;
+        notifyAll();
+    }
+
+    /**
+     * @return the oldest report sent by the driver and not taken yet, or null
+     * if there is none.
+     */
+    public synchronized byte[] takeSent() {
+        if (sentSize == 0) {
+            return null;
+        }
+        byte[] report = sent[sentHead];
+        sent[sentHead] = null;
+        sentHead = (sentHead + 1) % sent.length;
+        sentSize--;
+        return report;
+    }
+
+    @Override
+    public synchronized void send(byte[] report) throws IOException {
+        if (closed) {
+            throw new IOException("transport closed");
+        }
+        if (sentSize == sent.length) {
+            sentHead = (sentHead + 1) % sent.length;
+            sentSize--;
+        }
+        sent[(sentHead + sentSize) % sent.length] = Arrays.copyOf(report, report.length);
+        sentSize++;
+    }
+
+    @Override
+    public synchronized int receive(byte[] buffer) throws IOException {
+        while (size == 0 && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted", ex);
+            }
+        }
+        if (size == 0) {
+            throw new IOException("transport closed");
+        }
+        int n = Math.min(lengths[head], buffer.length);
+        System.arraycopy(reports[head], 0, buffer, 0, n);
+        head = (head + 1) % reports.length;
+        size--;
+        notifyAll();
+        return n;
+    }
+
+    /**
+     * Closes the transport. Reports already delivered can still be received.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+}
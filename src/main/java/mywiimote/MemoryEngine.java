@@ -0,0 +1,422 @@
+package mywiimote;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and writes the memory of the wiimote (EEPROM and registers)
+ * asynchronously. It is for implementation sake. Does not matter for library
+ * users.
+ *
+ * The requests (0x17 to read, 0x16 to write) are sent at once, up to a
+ * number of requests in flight, so a handshake with many reads and writes
+ * takes few round trips. The wiimote answers in order: the data read (0x21,
+ * up to 16 bytes per report) is matched by its address, and the
+ * acknowledgements of the writes (0x22) by their order. A request answered
+ * with an error, or not answered in time, is sent again a few times before
+ * failing. Reads of immutable regions (e.g. the factory calibration) are
+ * cached per device.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class MemoryEngine {
+
+    /**
+     * Address spaces.
+     */
+    static final int EEPROM = 0x00;
+    static final int REGISTERS = 0x04;
+
+    /**
+     * Most bytes of a write request.
+     */
+    static final int MAX_WRITE = 16;
+
+    /**
+     * Default number of requests sent and not answered yet.
+     */
+    static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    private static final int WRITE_DATA = 0x16;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long TIMEOUT = 500;
+    private static final long RETRY_DELAY = 20;
+
+    /**
+     * Thread of the timeouts, the retries and the failures. Created when
+     * connected, shut down when disconnected.
+     */
+    private ScheduledExecutorService executor = null;
+
+    private final OutputScheduler output;
+
+    /**
+     * Requests waiting for room in flight.
+     */
+    private final ArrayDeque<Request> waiting = new ArrayDeque<>();
+
+    /**
+     * Requests sent and not answered yet, in the order they were sent.
+     */
+    private final List<Request> inFlight = new ArrayList<>();
+
+    /**
+     * Data of the immutable regions already read from the device.
+     */
+    private final Map<Long, byte[]> cache = new HashMap<>();
+
+    private String device = null;
+
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    /**
+     * A read or a write.
+     */
+    private static class Request {
+
+        final int space;
+        final int address;
+        final int size;
+        final byte[] data;
+        final boolean cacheable;
+        final CompletableFuture<byte[]> future = new CompletableFuture<>();
+
+        /**
+         * Data read, and how many bytes were already received.
+         */
+        byte[] result = null;
+        int received = 0;
+
+        /**
+         * Number of times the request was sent.
+         */
+        int attempts = 0;
+
+        /**
+         * Changes whenever the request is sent or given up, so the timeouts
+         * and retries scheduled before are ignored.
+         */
+        int generation = 0;
+
+        Request(int space, int address, int size, byte[] data, boolean cacheable) {
+            this.space = space;
+            this.address = address;
+            this.size = size;
+            this.data = data;
+            this.cacheable = cacheable;
+        }
+
+        boolean isRead() {
+            return data == null;
+        }
+
+        long key() {
+            return ((long) space << 48) | ((long) address << 16) | size;
+        }
+    }
+
+    MemoryEngine(OutputScheduler output) {
+        this.output = output;
+    }
+
+    /**
+     * Starts a new connection: the requests of the previous one fail. The
+     * cache is kept if the device is the same.
+     *
+     * @param device bluetooth address of the device, or null if unknown.
+     */
+    synchronized void connected(String device) {
+        if (device == null || !device.equals(this.device)) {
+            cache.clear();
+        }
+        this.device = device;
+        failAll(new IOException("reconnected"));
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor((r) -> {
+                Thread thread = new Thread(r, "mywiimote-memory");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Fails the pending requests and stops the thread of the engine.
+     */
+    synchronized void disconnected() {
+        failAll(new IOException("disconnected"));
+        if (executor != null) {
+            //the failures already queued are still delivered.
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    synchronized void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("at least one request must be in flight: " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+        dispatch();
+    }
+
+    /**
+     * Reads the memory.
+     *
+     * @param space EEPROM or REGISTERS.
+     * @param address address of the first byte.
+     * @param size number of bytes (up to 65535).
+     * @param cacheable true if the region never changes, so it is read once
+     * per device.
+     * @return the data. Fails at once if not connected.
+     */
+    synchronized CompletableFuture<byte[]> read(int space, int address, int size, boolean cacheable) {
+        if (size < 1 || size > 0xFFFF) {
+            throw new IllegalArgumentException("invalid size: " + size);
+        }
+        Request request = new Request(space, address, size, null, cacheable);
+        byte[] cached = cacheable ? cache.get(request.key()) : null;
+        if (cached != null) {
+            request.future.complete(cached.clone());
+            return request.future;
+        }
+        if (executor == null) {
+            request.future.completeExceptionally(new IOException("not connected"));
+            return request.future;
+        }
+        waiting.add(request);
+        dispatch();
+        return request.future;
+    }
+
+    /**
+     * Writes the memory. Data longer than 16 bytes is written by several
+     * requests.
+     *
+     * @param space EEPROM or REGISTERS.
+     * @param address address of the first byte.
+     * @param data the bytes.
+     * @return completed when the wiimote acknowledged every byte. Fails at once
+     * if not connected.
+     */
+    synchronized CompletableFuture<Void> write(int space, int address, byte[] data) {
+        if (data.length == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (executor == null) {
+            return CompletableFuture.failedFuture(new IOException("not connected"));
+        }
+        CompletableFuture<?>[] parts = new CompletableFuture<?>[(data.length + MAX_WRITE - 1) / MAX_WRITE];
+        for (int i = 0; i < parts.length; i++) {
+            int from = i * MAX_WRITE;
+            int to = Math.min(data.length, from + MAX_WRITE);
+            byte[] chunk = new byte[to - from];
+            System.arraycopy(data, from, chunk, 0, chunk.length);
+            Request request = new Request(space, address + from, chunk.length, chunk, false);
+            waiting.add(request);
+            parts[i] = request.future;
+        }
+        dispatch();
+        return CompletableFuture.allOf(parts);
+    }
+
+    /**
+     * Interprets a report with data read from the memory (0x21): the buttons,
+     * the size of the data (high nibble) with an error code (low nibble), the
+     * low 16 bits of the address and up to 16 bytes of data.
+     */
+    void dataRead(byte[] report, int length) {
+        if (length < 7) {
+            return;
+        }
+        int error = report[4] & 0x0F;
+        int size = ((report[4] >> 4) & 0x0F) + 1;
+        int offset = ((report[5] & 0xFF) << 8) | (report[6] & 0xFF);
+        Request done = null;
+        synchronized (this) {
+            Request request = null;
+            for (Request r : inFlight) {
+                if (r.isRead() && ((r.address + r.received) & 0xFFFF) == offset) {
+                    request = r;
+                    break;
+                }
+            }
+            if (request == null) {
+                //late answer of a request sent again, or of a previous connection.
+                return;
+            }
+            if (error != 0) {
+                retry(request, new IOException(String.format("error %d reading 0x%06x", error, request.address)));
+                return;
+            }
+            int n = Math.min(size, Math.min(length - 7, request.size - request.received));
+            if (request.received == 0) {
+                request.result = new byte[request.size];
+            }
+            System.arraycopy(report, 7, request.result, request.received, n);
+            request.received += n;
+            if (request.received == request.size) {
+                inFlight.remove(request);
+                if (request.cacheable) {
+                    cache.put(request.key(), request.result.clone());
+                }
+                done = request;
+                dispatch();
+            }
+        }
+        if (done != null) {
+            //completed outside the lock: the dependent actions may send new requests.
+            done.future.complete(done.result);
+        }
+    }
+
+    /**
+     * Interprets an acknowledgement (0x22): the buttons, the report
+     * acknowledged and an error code. Only the writes are expected.
+     */
+    void acknowledged(byte[] report, int length) {
+        if (length < 6 || (report[4] & 0xFF) != WRITE_DATA) {
+            return;
+        }
+        int error = report[5] & 0xFF;
+        Request done = null;
+        synchronized (this) {
+            Request request = null;
+            for (Request r : inFlight) {
+                if (!r.isRead()) {
+                    request = r;
+                    break;
+                }
+            }
+            if (request == null) {
+                return;
+            }
+            if (error != 0) {
+                retry(request, new IOException(String.format("error %d writing 0x%06x", error, request.address)));
+                return;
+            }
+            inFlight.remove(request);
+            done = request;
+            dispatch();
+        }
+        done.future.complete(null);
+    }
+
+    /**
+     * Sends the waiting requests while there is room in flight. A read is not
+     * sent while another read of the same address (low 16 bits) is in flight,
+     * since the answers could not be told apart. Must be called holding the
+     * lock.
+     */
+    private void dispatch() {
+        while (inFlight.size() < maxInFlight && !waiting.isEmpty()) {
+            Request next = waiting.peek();
+            if (next.isRead() && conflicts(next)) {
+                return;
+            }
+            waiting.poll();
+            inFlight.add(next);
+            send(next);
+        }
+    }
+
+    private boolean conflicts(Request read) {
+        for (Request r : inFlight) {
+            if (r.isRead() && (r.address & 0xFFFF) == (read.address & 0xFFFF)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends a request and schedules its timeout. Must be called holding the
+     * lock.
+     */
+    private void send(Request request) {
+        request.attempts++;
+        request.generation++;
+        request.received = 0;
+        byte[] report;
+        if (request.isRead()) {
+            report = new byte[]{(byte) 0xa2, 0x17, (byte) request.space, (byte) (request.address >> 16), (byte) (request.address >> 8), (byte) request.address,
+                (byte) (request.size >> 8), (byte) request.size};
+        } else {
+            report = new byte[ReportMode.MAX_REPORT_SIZE];
+            report[0] = (byte) 0xa2;
+            report[1] = WRITE_DATA;
+            report[2] = (byte) request.space;
+            report[3] = (byte) (request.address >> 16);
+            report[4] = (byte) (request.address >> 8);
+            report[5] = (byte) request.address;
+            report[6] = (byte) request.size;
+            System.arraycopy(request.data, 0, report, 7, request.size);
+        }
+        try {
+            output.send(report);
+        } catch (IOException ex) {
+            inFlight.remove(request);
+            executor.execute(() -> request.future.completeExceptionally(ex));
+            return;
+        }
+        int generation = request.generation;
+        executor.schedule(() -> timeout(request, generation), TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void timeout(Request request, int generation) {
+        if (request.generation != generation || !inFlight.contains(request)) {
+            return;
+        }
+        retry(request, new IOException(String.format("no answer for 0x%06x", request.address)));
+    }
+
+    /**
+     * Sends a request again after a short delay, or fails it after the last
+     * attempt. Must be called holding the lock.
+     */
+    private void retry(Request request, IOException cause) {
+        if (request.attempts >= MAX_ATTEMPTS) {
+            inFlight.remove(request);
+            dispatch();
+            executor.execute(() -> request.future.completeExceptionally(cause));
+            return;
+        }
+        int generation = ++request.generation;
+        executor.schedule(() -> resend(request, generation), RETRY_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void resend(Request request, int generation) {
+        if (request.generation != generation || !inFlight.contains(request)) {
+            return;
+        }
+        //the wiimote answers in order: the request goes after the ones already sent.
+        inFlight.remove(request);
+        inFlight.add(request);
+        send(request);
+    }
+
+    /**
+     * Fails every request. Must be called holding the lock.
+     */
+    private void failAll(IOException cause) {
+        List<Request> all = new ArrayList<>(inFlight);
+        all.addAll(waiting);
+        inFlight.clear();
+        waiting.clear();
+        if (!all.isEmpty()) {
+            executor.execute(() -> {
+                for (Request r : all) {
+                    r.future.completeExceptionally(cause);
+                }
+            });
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package mywiimote;
 
+import java.util.Arrays;
+
 /**
  * Enumerates the models that the library supports.
  * 
@@ -22,4 +24,15 @@ enum Model {
     public String getModelName() {
         return modelName;
     }
+
+    /**
+     * Indicate if the model of bluetooth device is valid. To be valid, the
+     * device must comply with the list of the models listed in this enum.
+     *
+     * @param model name of the model
+     * @return true if valid. False otherwise.
+     */
+    static boolean isValid(String model) {
+        return Arrays.stream(values()).anyMatch((t) -> t.getModelName().equals(model));
+    }
 }
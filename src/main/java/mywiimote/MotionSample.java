@@ -0,0 +1,77 @@
+package mywiimote;
+
+/**
+ * Values of the accelerometer, as published to reactive subscribers. The
+ * values are the same notified to
+ * {@link WiiMoteListener#accelerometerValues}. Immutable.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ * @see WiiMoteDriver#motionSamples
+ */
+public final class MotionSample {
+
+    private final double x;
+    private final double y;
+    private final double z;
+    private final double xBoundary;
+    private final double yBoundary;
+    private final double zBoundary;
+    private final long timestamp;
+
+    /**
+     * Default constructor.
+     *
+     * @param x value in x axis.
+     * @param y value in y axis.
+     * @param z value in z axis.
+     * @param xBoundary value of x without movement.
+     * @param yBoundary value of y without movement.
+     * @param zBoundary value of z without movement.
+     * @param timestamp time of arrival of the report, from System.nanoTime().
+     */
+    public MotionSample(double x, double y, double z, double xBoundary, double yBoundary, double zBoundary, long timestamp) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.xBoundary = xBoundary;
+        this.yBoundary = yBoundary;
+        this.zBoundary = zBoundary;
+        this.timestamp = timestamp;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    public double getXBoundary() {
+        return xBoundary;
+    }
+
+    public double getYBoundary() {
+        return yBoundary;
+    }
+
+    public double getZBoundary() {
+        return zBoundary;
+    }
+
+    /**
+     * @return time of arrival of the report, from System.nanoTime().
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "x=" + x + " y=" + y + " z=" + z;
+    }
+}
@@ -0,0 +1,113 @@
+package mywiimote;
+
+/**
+ * Interprets the data of the Nunchuk. It is for implementation sake. Does not
+ * matter for library users.
+ *
+ * The Nunchuk sends 6 bytes (unencrypted, after the extension is
+ * initialized): stick x, stick y, the 8 most significant bits of the
+ * accelerometer x, y and z, and a last byte with the buttons (bit 0 is Z, bit
+ * 1 is C, 0 when pressed) and the 2 least significant bits of each axis. The
+ * bytes are read in place from the report and compared with the previous
+ * ones, so nothing is queued when nothing changed.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class Nunchuk {
+
+    /**
+     * Size of the data of the Nunchuk.
+     */
+    static final int SIZE = 6;
+
+    /**
+     * Identifier of the Nunchuk, read from the last 6 bytes of the extension
+     * registers (0xa400fa).
+     */
+    static final int[] ID = {0x00, 0x00, 0xa4, 0x20, 0x00, 0x00};
+
+    /**
+     * Value of the stick when centered, and the distance to the center at the
+     * edges of a typical Nunchuk.
+     */
+    private static final int STICK_CENTER = 128;
+    private static final double STICK_RANGE = 100.0;
+
+    private static final int Z = 0x01;
+    private static final int C = 0x02;
+
+    private final EventDispatcher dispatcher;
+
+    /**
+     * Data of the previous report.
+     */
+    private final byte[] previous = new byte[SIZE];
+
+    /**
+     * True until the first data is received.
+     */
+    private volatile boolean first = true;
+
+    Nunchuk(EventDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Forgets the previous data, e.g. when the Nunchuk is plugged again.
+     */
+    void reset() {
+        first = true;
+    }
+
+    /**
+     * @param data the identifier of the extension, 6 bytes.
+     * @param offset position of the identifier in data.
+     * @return true if the extension is a Nunchuk.
+     */
+    static boolean isNunchuk(byte[] data, int offset) {
+        for (int i = 0; i < ID.length; i++) {
+            if ((data[offset + i] & 0xFF) != ID[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Interprets the data of the Nunchuk.
+     *
+     * @param report the report.
+     * @param offset position of the data of the extension in the report.
+     */
+    void decode(byte[] report, int offset) {
+        int buttons = ~report[offset + 5] & (Z | C);
+        int changed;
+        boolean values;
+        if (first) {
+            changed = buttons;
+            values = true;
+            first = false;
+        } else {
+            changed = buttons ^ (~previous[5] & (Z | C));
+            values = report[offset] != previous[0] || report[offset + 1] != previous[1]
+                    || report[offset + 2] != previous[2] || report[offset + 3] != previous[3]
+                    || report[offset + 4] != previous[4] || (report[offset + 5] & 0xFC) != (previous[5] & 0xFC);
+        }
+        if ((changed & C) != 0) {
+            dispatcher.nunchuk((buttons & C) != 0 ? EventDispatcher.NUNCHUK_C_PRESSED : EventDispatcher.NUNCHUK_C_RELEASED);
+        }
+        if ((changed & Z) != 0) {
+            dispatcher.nunchuk((buttons & Z) != 0 ? EventDispatcher.NUNCHUK_Z_PRESSED : EventDispatcher.NUNCHUK_Z_RELEASED);
+        }
+        if (values) {
+            int last = report[offset + 5] & 0xFF;
+            int x = ((report[offset + 2] & 0xFF) << 2) | ((last >> 2) & 0x03);
+            int y = ((report[offset + 3] & 0xFF) << 2) | ((last >> 4) & 0x03);
+            int z = ((report[offset + 4] & 0xFF) << 2) | ((last >> 6) & 0x03);
+            dispatcher.nunchuk(((report[offset] & 0xFF) - STICK_CENTER) / STICK_RANGE,
+                    ((report[offset + 1] & 0xFF) - STICK_CENTER) / STICK_RANGE,
+                    AccelerometerSample.NORMALIZED[x], AccelerometerSample.NORMALIZED[y], AccelerometerSample.NORMALIZED[z]);
+        }
+        System.arraycopy(report, offset, previous, 0, SIZE);
+    }
+}
@@ -0,0 +1,56 @@
+package mywiimote;
+
+/**
+ * Optional interface for clients that use the Nunchuk, the extension with a
+ * stick, two buttons (C and Z) and its own accelerometer.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ * @see WiiMoteDriver#setNunchukListener
+ */
+public interface NunchukListener {
+
+    /**
+     * The listener will be notified when a Nunchuk is plugged into the
+     * wiimote.
+     */
+    public void nunchukConnected();
+
+    /**
+     * The listener will be notified when the Nunchuk is unplugged.
+     */
+    public void nunchukDisconnected();
+
+    /**
+     * The listener will be notified if the C button is pressed.
+     */
+    public void buttonCPressed();
+
+    /**
+     * The listener will be notified if the C button is released.
+     */
+    public void buttonCReleased();
+
+    /**
+     * The listener will be notified if the Z button is pressed.
+     */
+    public void buttonZPressed();
+
+    /**
+     * The listener will be notified if the Z button is released.
+     */
+    public void buttonZReleased();
+
+    /**
+     * The listener will be notified when the stick or the accelerometer of the
+     * Nunchuk changes.
+     *
+     * @param stickX position of the stick in x axis, about -1 (left) to 1
+     * (right). 0 when centered.
+     * @param stickY position of the stick in y axis, about -1 (down) to 1
+     * (up). 0 when centered.
+     * @param x value in x axis of the accelerometer. Value between 0 and 1.
+     * @param y value in y axis of the accelerometer. Value between 0 and 1.
+     * @param z value in z axis of the accelerometer. Value between 0 and 1.
+     */
+    public void nunchukValues(double stickX, double stickY, double x, double y, double z);
+}
@@ -0,0 +1,24 @@
+package mywiimote;
+
+/**
+ * Optional interface for clients that want the tilt of the wiimote instead of
+ * the raw values of the accelerometer.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ * @see WiiMoteDriver#setOrientationListener
+ */
+public interface OrientationListener {
+
+    /**
+     * The listener will be notified with the tilt of the wiimote, computed from
+     * the gravity measured by the accelerometer. The values are only
+     * meaningful while the wiimote is not being accelerated (e.g. held still
+     * or moved slowly).
+     *
+     * @param pitch rotation around the x axis, in degrees, between -90 (tip
+     * pointing down) and 90 (tip pointing up).
+     * @param roll rotation around the y axis, in degrees, between -180 and
+     * 180. 0 when the buttons face up.
+     */
+    public void orientation(double pitch, double roll);
+}
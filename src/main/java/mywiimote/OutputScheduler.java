@@ -0,0 +1,283 @@
+package mywiimote;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends the output reports to the wiimote (leds and rumble) from its own
+ * thread. It is for implementation sake. Does not matter for library users.
+ *
+ * The scheduler keeps the current state of the leds and of the rumble. The
+ * changes are not sent at once: they are coalesced into a single report (0x10
+ * for rumble, 0x11 for leds, which also carries the rumble) and the reports
+ * are sent at most once per interval, so the data pipe is not flooded. The
+ * rumble bit is carried in every report sent through the scheduler, as the
+ * wiimote protocol requires.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class OutputScheduler {
+
+    /**
+     * Default minimal interval between two reports, in milliseconds.
+     */
+    static final long DEFAULT_MIN_INTERVAL = 10;
+
+    /**
+     * Thread that sends the reports. Created when connected, shut down by
+     * close().
+     */
+    private ScheduledExecutorService executor = null;
+
+    /**
+     * Held while a report is sent, so the reports of the scheduler and the
+     * reports of the driver do not mix.
+     */
+    private final Object sendLock = new Object();
+
+    private Transport transport = null;
+
+    /**
+     * Bits of the leds (0x10, 0x20, 0x40 and 0x80).
+     */
+    private int leds = 0;
+
+    private volatile boolean rumble = false;
+
+    private boolean ledsChanged = false;
+    private boolean rumbleChanged = false;
+    private boolean flushScheduled = false;
+
+    /**
+     * Time (System.nanoTime) of the last report sent.
+     */
+    private long lastSend = 0;
+
+    private long minInterval = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MIN_INTERVAL);
+
+    /**
+     * Identifies the rumble pattern in progress. A new pattern (or turning off
+     * the rumble) makes the steps of the previous one obsolete.
+     */
+    private long pattern = 0;
+
+    /**
+     * Number of reports sent and of changes merged into a pending report.
+     */
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Reusable reports. Only used holding sendLock.
+     */
+    private final byte[] rumbleReport = {(byte) 0xa2, 0x10, 0};
+    private final byte[] ledsReport = {(byte) 0xa2, 0x11, 0};
+
+    /**
+     * Sets the link with the wiimote. The current state is sent again. When
+     * disconnected, the rumble is turned off.
+     *
+     * @param transport link with the wiimote, or null if disconnected.
+     */
+    synchronized void setTransport(Transport transport) {
+        this.transport = transport;
+        if (transport == null) {
+            pattern++;
+            rumble = false;
+        } else {
+            if (executor == null) {
+                executor = Executors.newSingleThreadScheduledExecutor((r) -> {
+                    Thread thread = new Thread(r, "mywiimote-output");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            ledsChanged = leds != 0 || rumble;
+            schedule();
+        }
+    }
+
+    /**
+     * Disconnects, like setTransport(null), and stops the thread that sends
+     * the reports. The pending changes are not sent.
+     */
+    synchronized void close() {
+        setTransport(null);
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * @param interval minimal interval between two reports.
+     * @param unit unit of the interval.
+     */
+    synchronized void setMinInterval(long interval, TimeUnit unit) {
+        minInterval = unit.toNanos(interval);
+    }
+
+    /**
+     * @param leds bits of the leds that should be turned on (0x10, 0x20, 0x40
+     * and 0x80). The other leds are turned off.
+     */
+    synchronized void setLeds(int leds) {
+        if (this.leds != leds) {
+            this.leds = leds;
+            ledsChanged = true;
+            schedule();
+        }
+    }
+
+    /**
+     * Turns the rumble on or off, canceling the rumble pattern in progress.
+     *
+     * @param on true to turn on.
+     */
+    synchronized void setRumble(boolean on) {
+        pattern++;
+        changeRumble(on);
+    }
+
+    /**
+     * Plays a rumble pattern: the rumble is turned on during the first
+     * duration, off during the second one, on during the third one and so on.
+     * At the end, the rumble is turned off. Cancels the pattern in progress.
+     *
+     * @param durations durations in milliseconds.
+     */
+    synchronized void rumblePattern(long... durations) {
+        long id = ++pattern;
+        long[] steps = durations.clone();
+        step(id, steps, 0);
+    }
+
+    private synchronized void step(long id, long[] durations, int index) {
+        if (id != pattern) {
+            return;
+        }
+        if (index == durations.length) {
+            changeRumble(false);
+            return;
+        }
+        changeRumble(index % 2 == 0);
+        if (executor == null) {
+            //never connected or closed: the next steps would not be sent.
+            return;
+        }
+        executor.schedule(() -> step(id, durations, index + 1), durations[index], TimeUnit.MILLISECONDS);
+    }
+
+    private void changeRumble(boolean on) {
+        if (rumble != on) {
+            rumble = on;
+            rumbleChanged = true;
+            schedule();
+        }
+    }
+
+    /**
+     * Schedules the sending of the pending changes, respecting the minimal
+     * interval between reports. Must be called holding the lock.
+     */
+    private void schedule() {
+        if (flushScheduled) {
+            coalesced.increment();
+            return;
+        }
+        if (transport == null) {
+            return;
+        }
+        flushScheduled = true;
+        long delay = Math.max(0, lastSend + minInterval - System.nanoTime());
+        executor.schedule(this::flush, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sends one report with all pending changes.
+     */
+    private void flush() {
+        Transport link;
+        boolean sendLeds;
+        int value;
+        synchronized (this) {
+            flushScheduled = false;
+            if (transport == null || (!ledsChanged && !rumbleChanged)) {
+                return;
+            }
+            link = transport;
+            sendLeds = ledsChanged;
+            value = leds | (rumble ? 0x01 : 0x00);
+            ledsChanged = false;
+            rumbleChanged = false;
+        }
+        synchronized (sendLock) {
+            byte[] report = sendLeds ? ledsReport : rumbleReport;
+            report[2] = (byte) value;
+            try {
+                link.send(report);
+                sent.increment();
+            } catch (IOException ex) {
+                Logger.getLogger(OutputScheduler.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        synchronized (this) {
+            lastSend = System.nanoTime();
+        }
+    }
+
+    /**
+     * Sends a report at once, from the thread of the caller, adding the rumble
+     * bit to its first data byte. The report of the caller is not changed.
+     *
+     * @param report the report, including the header byte (0xa2).
+     * @throws IOException if the report could not be sent.
+     */
+    void send(byte[] report) throws IOException {
+        Transport link;
+        synchronized (this) {
+            link = transport;
+        }
+        if (link == null) {
+            throw new IOException("not connected");
+        }
+        synchronized (sendLock) {
+            if (report.length > 2) {
+                report = report.clone();
+                report[2] = (byte) (rumble ? report[2] | 0x01 : report[2] & ~0x01);
+            }
+            link.send(report);
+            sent.increment();
+        }
+        synchronized (this) {
+            lastSend = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return true if the rumble is on.
+     */
+    boolean isRumble() {
+        return rumble;
+    }
+
+    /**
+     * @return number of reports sent.
+     */
+    long getSent() {
+        return sent.sum();
+    }
+
+    /**
+     * @return number of changes of the leds or of the rumble merged into a
+     * report that was already waiting to be sent.
+     */
+    long getCoalesced() {
+        return coalesced.sum();
+    }
+}
@@ -0,0 +1,29 @@
+package mywiimote;
+
+/**
+ * Enumerates what the library should do when the queue of events is full,
+ * that is, when the client of the library is slower than the wiimote.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The receiving of data waits until there is room for the event. No event
+     * is lost while the events are being delivered.
+     */
+    BLOCK,
+    /**
+     * The new event is discarded. A new press or release of a button takes
+     * the place of the newest values of the accelerometer or of the tilt
+     * instead, or of the newest press and release of a button, so the buttons
+     * delivered always match the wiimote.
+     */
+    DROP_NEWEST,
+    /**
+     * The oldest event waiting in the queue is discarded to make room for the
+     * new one. The press and the release of a button are only discarded
+     * together, so the buttons delivered always match the wiimote.
+     */
+    DROP_OLDEST;
+}
@@ -0,0 +1,24 @@
+package mywiimote;
+
+/**
+ * Optional interface for clients that use the wiimote as a pointer, aiming at
+ * the screen with the IR camera (the sensor bar must be near the screen).
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ * @see WiiMoteDriver#setPointerListener
+ */
+public interface PointerListener {
+
+    /**
+     * The listener will be notified when the position of the pointer changes.
+     * Multiply the values by the resolution of the screen to get pixels.
+     *
+     * @param x horizontal position, from 0 (left edge of the screen) to 1
+     * (right edge).
+     * @param y vertical position, from 0 (top edge of the screen) to 1 (bottom
+     * edge).
+     * @param visible false if the sensor bar is out of sight of the camera. In
+     * this case, x and y are the last known position.
+     */
+    public void pointer(double x, double y, boolean visible);
+}
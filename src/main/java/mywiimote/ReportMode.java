@@ -0,0 +1,187 @@
+package mywiimote;
+
+/**
+ * Enumerates the data reporting modes of the wiimote. Each mode carries a
+ * different set of data, so the client can choose the cheapest mode that
+ * carries what the application needs.
+ *
+ * Each mode also describes where its data is in the report (positions counted
+ * from the header byte 0xa1, so the report id is at position 1). A position
+ * of -1 means the data is not carried by the mode.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+public enum ReportMode {
+
+    /**
+     * Buttons only.
+     */
+    BUTTONS(0x30, 2, -1, -1, 0, -1, 0),
+    /**
+     * Buttons and accelerometer. The default mode.
+     */
+    BUTTONS_ACCELEROMETER(0x31, 2, 4, -1, 0, -1, 0),
+    /**
+     * Buttons and 8 bytes of extension.
+     */
+    BUTTONS_EXTENSION8(0x32, 2, -1, -1, 0, 4, 8),
+    /**
+     * Buttons, accelerometer and 12 bytes of IR camera.
+     */
+    BUTTONS_ACCELEROMETER_IR12(0x33, 2, 4, 7, 12, -1, 0),
+    /**
+     * Buttons and 19 bytes of extension.
+     */
+    BUTTONS_EXTENSION19(0x34, 2, -1, -1, 0, 4, 19),
+    /**
+     * Buttons, accelerometer and 16 bytes of extension.
+     */
+    BUTTONS_ACCELEROMETER_EXTENSION16(0x35, 2, 4, -1, 0, 7, 16),
+    /**
+     * Buttons, 10 bytes of IR camera and 9 bytes of extension.
+     */
+    BUTTONS_IR10_EXTENSION9(0x36, 2, -1, 4, 10, 14, 9),
+    /**
+     * Buttons, accelerometer, 10 bytes of IR camera and 6 bytes of extension.
+     */
+    BUTTONS_ACCELEROMETER_IR10_EXTENSION6(0x37, 2, 4, 7, 10, 17, 6),
+    /**
+     * 21 bytes of extension. No buttons.
+     */
+    EXTENSION21(0x3d, -1, -1, -1, 0, 2, 21),
+    /**
+     * Interleaved mode: buttons, accelerometer and 36 bytes of IR camera,
+     * alternating between the reports 0x3e and 0x3f. Each report carries one
+     * axis of the accelerometer and half of the IR data; the z axis is split in
+     * the unused bits of the buttons.
+     */
+    INTERLEAVED(0x3e, 2, 4, 5, 18, -1, 0);
+
+    /**
+     * Size of the biggest report, including the header byte (0xa1).
+     */
+    public static final int MAX_REPORT_SIZE = 23;
+
+    /**
+     * Id of the second report of the interleaved mode.
+     */
+    static final int INTERLEAVED_SECOND = 0x3f;
+
+    /**
+     * Modes indexed by the report id.
+     */
+    private static final ReportMode[] BY_ID = new ReportMode[256];
+
+    static {
+        for (ReportMode mode : values()) {
+            BY_ID[mode.id] = mode;
+        }
+        BY_ID[INTERLEAVED_SECOND] = INTERLEAVED;
+    }
+
+    final int id;
+    final int buttons;
+    final int accelerometer;
+    final int ir;
+    final int irLength;
+    final int extension;
+    final int extensionLength;
+    private final int size;
+
+    ReportMode(int id, int buttons, int accelerometer, int ir, int irLength, int extension, int extensionLength) {
+        this.id = id;
+        this.buttons = buttons;
+        this.accelerometer = accelerometer;
+        this.ir = ir;
+        this.irLength = irLength;
+        this.extension = extension;
+        this.extensionLength = extensionLength;
+        //the interleaved mode carries only one axis of the accelerometer per report.
+        int end = Math.max(buttons + 2, accelerometer + (id == 0x3e ? 1 : 3));
+        end = Math.max(end, ir >= 0 ? ir + irLength : 0);
+        end = Math.max(end, extension >= 0 ? extension + extensionLength : 0);
+        size = Math.max(2, end);
+    }
+
+    /**
+     * @param id report id.
+     * @return the mode of the report, or null if it is not a data report.
+     */
+    static ReportMode forId(int id) {
+        return BY_ID[id & 0xFF];
+    }
+
+    /**
+     * @return minimal size of the report of the mode, including the header
+     * byte (0xa1).
+     */
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the id of the report of the mode.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return true if the mode carries the accelerometer.
+     */
+    public boolean hasAccelerometer() {
+        return accelerometer >= 0;
+    }
+
+    /**
+     * @return true if the mode carries data of the IR camera.
+     */
+    public boolean hasIR() {
+        return ir >= 0;
+    }
+
+    /**
+     * @return true if the mode carries data of the extension.
+     */
+    public boolean hasExtension() {
+        return extension >= 0;
+    }
+
+    /**
+     * @return the closest mode that also carries data of the extension (e.g.
+     * 0x35 for 0x31), or this mode if it already carries it.
+     */
+    ReportMode withExtension() {
+        switch (this) {
+            case BUTTONS:
+                return BUTTONS_EXTENSION8;
+            case BUTTONS_ACCELEROMETER:
+                return BUTTONS_ACCELEROMETER_EXTENSION16;
+            case BUTTONS_ACCELEROMETER_IR12:
+            case INTERLEAVED:
+                return BUTTONS_ACCELEROMETER_IR10_EXTENSION6;
+            default:
+                return this;
+        }
+    }
+
+    /**
+     * @return the closest mode that also carries data of the IR camera (e.g.
+     * 0x33 for 0x31), or this mode if it already carries it.
+     */
+    ReportMode withIR() {
+        switch (this) {
+            case BUTTONS:
+            case BUTTONS_ACCELEROMETER:
+                return BUTTONS_ACCELEROMETER_IR12;
+            case BUTTONS_EXTENSION8:
+            case BUTTONS_EXTENSION19:
+            case EXTENSION21:
+                return BUTTONS_IR10_EXTENSION9;
+            case BUTTONS_ACCELEROMETER_EXTENSION16:
+                return BUTTONS_ACCELEROMETER_IR10_EXTENSION6;
+            default:
+                return this;
+        }
+    }
+}
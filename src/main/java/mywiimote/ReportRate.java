@@ -0,0 +1,88 @@
+package mywiimote;
+
+/**
+ * Measures the cadence of the reports received from the wiimote. It is for
+ * implementation sake. Does not matter for library users.
+ *
+ * The interval between two reports and its variation (jitter) are smoothed by
+ * exponential moving averages, as done for the jitter of RTP (RFC 3550). Only
+ * the thread receiving data writes; any thread can read.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class ReportRate {
+
+    /**
+     * Weight of the newest interval in the averages.
+     */
+    private static final double WEIGHT = 1.0 / 16;
+
+    private volatile long last = 0;
+    private volatile long count = 0;
+    private volatile double interval = 0;
+    private volatile double jitter = 0;
+
+    /**
+     * Registers the arrival of a report.
+     *
+     * @param nanos time of arrival, from System.nanoTime().
+     */
+    void arrived(long nanos) {
+        long previous = last;
+        last = nanos;
+        long n = count + 1;
+        count = n;
+        if (n == 1) {
+            return;
+        }
+        double current = nanos - previous;
+        if (n == 2) {
+            interval = current;
+            return;
+        }
+        double mean = interval;
+        jitter += (Math.abs(current - mean) - jitter) * WEIGHT;
+        interval = mean + (current - mean) * WEIGHT;
+    }
+
+    /**
+     * Forgets the measures, e.g. when the connection or the mode changes.
+     */
+    void reset() {
+        count = 0;
+        last = 0;
+        interval = 0;
+        jitter = 0;
+    }
+
+    /**
+     * @return reports per second, or 0 if not measured yet.
+     */
+    double getRate() {
+        double i = interval;
+        return i > 0 ? 1e9 / i : 0;
+    }
+
+    /**
+     * @return average variation of the interval between reports, in
+     * nanoseconds.
+     */
+    double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * @return number of reports received.
+     */
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * @return time of the last report, from System.nanoTime(), or 0 if no
+     * report was received.
+     */
+    long getLast() {
+        return last;
+    }
+}
@@ -0,0 +1,185 @@
+package mywiimote;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the raw reports received from the wiimote in a capture file. It is
+ * for implementation sake. Does not matter for library users.
+ *
+ * The capture file has a header (magic number, version and size of the
+ * records) followed by fixed-size records: the time of reception in
+ * nanoseconds, the report id, the size of the payload and the payload. The
+ * thread receiving data only copies the report into a ring in memory; a
+ * background thread writes the ring to the file. If the ring is full, the
+ * report is not recorded, so the receiving never waits for the disk.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class ReportRecorder implements Runnable {
+
+    /**
+     * "WIIR" in ASCII.
+     */
+    static final int MAGIC = 0x57494952;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 12;
+
+    /**
+     * Time (8 bytes), report id (1 byte), size of the payload (1 byte) and the
+     * payload (22 bytes).
+     */
+    static final int RECORD_SIZE = 32;
+
+    /**
+     * Maximum size of the payload: the report without the header byte (0xa1)
+     * and the report id.
+     */
+    static final int MAX_PAYLOAD = RECORD_SIZE - 10;
+
+    /**
+     * Number of records that the ring holds.
+     */
+    private static final int CAPACITY = 4096;
+
+    private final FileChannel channel;
+
+    /**
+     * Ring of records waiting to be written.
+     */
+    private final ByteBuffer ring = ByteBuffer.allocate(CAPACITY * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Records waiting to be written, taken from the ring by the writer.
+     */
+    private final ByteBuffer pending = ByteBuffer.allocate(CAPACITY * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    private int head = 0;
+    private int size = 0;
+
+    /**
+     * Number of reports not recorded because the ring was full.
+     */
+    private long dropped = 0;
+
+    private boolean running = true;
+
+    private final Thread thread;
+
+    private ReportRecorder(FileChannel channel) {
+        this.channel = channel;
+        thread = new Thread(this, "mywiimote-recorder");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Creates the capture file (replacing it if it exists) and starts the
+     * thread that writes it.
+     *
+     * @param path the capture file.
+     * @return the recorder.
+     * @throws IOException if the file could not be created.
+     */
+    static ReportRecorder start(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        ReportRecorder recorder = new ReportRecorder(channel);
+        recorder.thread.start();
+        return recorder;
+    }
+
+    /**
+     * Records a report. Called by the thread receiving data; never waits for
+     * the disk.
+     *
+     * @param report the report, including the header byte (0xa1).
+     * @param length size of the report.
+     * @param nanos time of reception, from System.nanoTime().
+     */
+    synchronized void record(byte[] report, int length, long nanos) {
+        if (size == CAPACITY || length < 2) {
+            dropped++;
+            return;
+        }
+        int payload = Math.min(length - 2, MAX_PAYLOAD);
+        int position = ((head + size) % CAPACITY) * RECORD_SIZE;
+        ring.putLong(position, nanos);
+        ring.put(position + 8, report[1]);
+        ring.put(position + 9, (byte) payload);
+        for (int i = 0; i < MAX_PAYLOAD; i++) {
+            ring.put(position + 10 + i, i < payload ? report[i + 2] : 0);
+        }
+        size++;
+    }
+
+    /**
+     * @return number of reports not recorded because the writer was late.
+     */
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Writes the records still in memory, closes the file and stops the
+     * thread.
+     */
+    void stop() {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Loop of the writer thread.
+     */
+    @Override
+    public void run() {
+        try {
+            boolean last = false;
+            while (!last) {
+                synchronized (this) {
+                    if (size == 0 && running) {
+                        wait(10);
+                    }
+                    last = !running;
+                    pending.clear();
+                    for (; size > 0; size--) {
+                        int position = head * RECORD_SIZE;
+                        pending.put(ring.array(), position, RECORD_SIZE);
+                        head = (head + 1) % CAPACITY;
+                    }
+                }
+                pending.flip();
+                while (pending.hasRemaining()) {
+                    channel.write(pending);
+                }
+            }
+        } catch (IOException | InterruptedException ex) {
+            Logger.getLogger(ReportRecorder.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                Logger.getLogger(ReportRecorder.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package mywiimote;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads a capture file written by {@link ReportRecorder} and feeds the reports
+ * to the driver, as if they were received from the wiimote. It is for
+ * implementation sake. Does not matter for library users.
+ *
+ * The file is memory-mapped, so the reports are read without copies to the
+ * heap besides the buffer of the report, which is reused.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class ReportReplay {
+
+    private ReportReplay() {
+    }
+
+    /**
+     * Feeds every report of the capture file to the driver.
+     *
+     * @param path the capture file.
+     * @param driver the driver that interprets the reports.
+     * @param realTime if true, the interval between the reports is the same of
+     * the recording. Otherwise the reports are fed as fast as possible.
+     * @return number of reports fed.
+     * @throws IOException if the file could not be read or is not a capture
+     * file.
+     */
+    static long replay(Path path, WiiMoteDriver driver, boolean realTime) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (map.remaining() < ReportRecorder.HEADER_SIZE
+                    || map.getInt(0) != ReportRecorder.MAGIC
+                    || map.getInt(4) != ReportRecorder.VERSION
+                    || map.getInt(8) != ReportRecorder.RECORD_SIZE) {
+                throw new IOException("not a capture file: " + path);
+            }
+            byte[] report = new byte[ReportRecorder.MAX_PAYLOAD + 2];
+            report[0] = (byte) 0xa1;
+            long count = 0;
+            long firstRecorded = 0;
+            long firstReplayed = 0;
+            for (int position = ReportRecorder.HEADER_SIZE; position + ReportRecorder.RECORD_SIZE <= map.limit(); position += ReportRecorder.RECORD_SIZE) {
+                long nanos = map.getLong(position);
+                report[1] = map.get(position + 8);
+                int payload = map.get(position + 9);
+                if (payload < 0 || payload > ReportRecorder.MAX_PAYLOAD) {
+                    throw new IOException("corrupted record at " + position + ": " + path);
+                }
+                for (int i = 0; i < payload; i++) {
+                    report[i + 2] = map.get(position + 10 + i);
+                }
+                if (realTime) {
+                    if (count == 0) {
+                        firstRecorded = nanos;
+                        firstReplayed = System.nanoTime();
+                    } else {
+                        long wait;
+                        while ((wait = (nanos - firstRecorded) - (System.nanoTime() - firstReplayed)) > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    }
+                }
+                //only the recorded bytes: the buffer may still hold the end of a longer report.
+                driver.process(report, payload + 2);
+                count++;
+            }
+            return count;
+        }
+    }
+}
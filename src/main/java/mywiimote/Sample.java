@@ -125,12 +125,10 @@ public class Sample {
         },
                 WiiMoteListener.SENSITIVITY_MEDIUM);
 
-        if (wii.discover()) {
-            if (wii.connect()) {
-                wii.turnOnRumble(3000);
-                wii.listen();
-            }
-
+        if (wii.connectKnownOrDiscover()) {
+            wii.setAutoReconnect(true);
+            wii.turnOnRumble(3000);
+            wii.listen();
         }
     }
 
@@ -0,0 +1,274 @@
+package mywiimote;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Subscription of a listener to the events of a wiimote.
+ *
+ * Each subscription has its own bounded queue and its own thread. The queue is
+ * a ring of primitive arrays written only by the thread receiving data and
+ * read only by the thread of the subscription, so no lock is taken and no
+ * object is created per event. A slow subscriber never delays the wiimote nor
+ * the other subscribers: when the queue is full, the new values of the
+ * accelerometer are discarded.
+ *
+ * The presses and the releases of the buttons have a reserved room after the
+ * capacity. If even that room is full, the press or release waits in the
+ * subscription and is queued as soon as there is room again, when the next
+ * event arrives. A press or release that is still waiting when the next
+ * transition of the same button arrives is discarded together with it, so
+ * the buttons delivered always match the wiimote.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ * @see WiiMoteDriver#subscribe(ButtonListener, int)
+ * @see WiiMoteDriver#subscribe(AccelerometerListener, int)
+ * @see WiiMoteDriver#subscribe(ButtonListener, AccelerometerListener, int)
+ */
+public class Subscription implements Runnable {
+
+    /**
+     * Default capacity of the queue of a subscription.
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static final int PRESSED = 0;
+    private static final int RELEASED = 1;
+    private static final int ACCELEROMETER = 2;
+
+    private static final ButtonEnum[] BUTTONS = ButtonEnum.values();
+
+    /**
+     * Positions of the queue reserved for the presses and the releases.
+     */
+    private static final int RESERVED = BUTTONS.length;
+
+    private final EventBus bus;
+    private final ButtonListener buttonListener;
+    private final AccelerometerListener accelerometerListener;
+
+    /*
+     * The queue. One position of each array per event.
+     */
+    private final int[] kinds;
+    private final int[] codes;
+    private final double[] values;
+    private final int capacity;
+
+    /**
+     * Size of the arrays of the queue: the capacity and the reserved room.
+     */
+    private final int slots;
+
+    /**
+     * Bits (by ordinal) of the buttons with a press or release waiting for
+     * room, and whether it is a press. Only used by the thread receiving data.
+     */
+    private int skipped = 0;
+    private int skippedPressed = 0;
+
+    /**
+     * Number of events taken by the subscriber. Only written by its thread.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Number of events queued. Only written by the thread receiving data.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    private volatile long dropped = 0;
+
+    private volatile boolean active = true;
+
+    /**
+     * True while the thread of the subscription is (about to be) parked.
+     */
+    private volatile boolean waiting = false;
+
+    private final Thread thread;
+
+    Subscription(EventBus bus, ButtonListener buttonListener, AccelerometerListener accelerometerListener, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        if (buttonListener == null && accelerometerListener == null) {
+            throw new IllegalArgumentException("listener is null");
+        }
+        this.bus = bus;
+        this.buttonListener = buttonListener;
+        this.accelerometerListener = accelerometerListener;
+        this.capacity = capacity;
+        slots = capacity + RESERVED;
+        kinds = new int[slots];
+        codes = new int[slots];
+        values = new double[slots * 6];
+        thread = new Thread(this, "mywiimote-subscriber");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * @return true if the subscriber receives buttons.
+     */
+    boolean hasButtons() {
+        return buttonListener != null;
+    }
+
+    /**
+     * @return true if the subscriber receives the accelerometer.
+     */
+    boolean hasAccelerometer() {
+        return accelerometerListener != null;
+    }
+
+    /**
+     * Queues the press or the release of a button. Only called by the thread
+     * receiving data.
+     */
+    void button(ButtonEnum button, boolean pressed) {
+        resend();
+        int bit = 1 << button.ordinal();
+        if ((skipped & bit) != 0) {
+            //the transition waiting for room and this one cancel each other.
+            skipped &= ~bit;
+            dropped += 2;
+            return;
+        }
+        long t = tail.get();
+        if (t - head.get() == slots) {
+            skipped |= bit;
+            skippedPressed = pressed ? skippedPressed | bit : skippedPressed & ~bit;
+            return;
+        }
+        queue(t, button.ordinal(), pressed);
+    }
+
+    /**
+     * Queues the presses and releases waiting for room, while there is room.
+     */
+    private void resend() {
+        while (skipped != 0) {
+            long t = tail.get();
+            if (t - head.get() == slots) {
+                return;
+            }
+            int code = Integer.numberOfTrailingZeros(skipped);
+            skipped &= skipped - 1;
+            queue(t, code, (skippedPressed & (1 << code)) != 0);
+        }
+    }
+
+    private void queue(long t, int code, boolean pressed) {
+        int i = (int) (t % slots);
+        kinds[i] = pressed ? PRESSED : RELEASED;
+        codes[i] = code;
+        publish(t);
+    }
+
+    /**
+     * Queues the values of the accelerometer. Only called by the thread
+     * receiving data.
+     */
+    void accelerometer(double x, double y, double z, double xBoundary, double yBoundary, double zBoundary) {
+        resend();
+        long t = tail.get();
+        if (t - head.get() >= capacity) {
+            dropped++;
+            return;
+        }
+        int i = (int) (t % slots);
+        kinds[i] = ACCELEROMETER;
+        int v = i * 6;
+        values[v] = x;
+        values[v + 1] = y;
+        values[v + 2] = z;
+        values[v + 3] = xBoundary;
+        values[v + 4] = yBoundary;
+        values[v + 5] = zBoundary;
+        publish(t);
+    }
+
+    private void publish(long t) {
+        tail.set(t + 1);
+        if (waiting) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Stops the delivery of the events to the listener. The events already
+     * queued are still delivered.
+     */
+    public void cancel() {
+        bus.remove(this);
+        active = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * @return true until the subscription is canceled.
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * @return number of events discarded because the queue was full.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Loop of the thread of the subscription.
+     */
+    @Override
+    public void run() {
+        while (true) {
+            long h = head.get();
+            if (h == tail.get()) {
+                if (!active) {
+                    return;
+                }
+                waiting = true;
+                if (h == tail.get() && active) {
+                    LockSupport.park(this);
+                }
+                waiting = false;
+                continue;
+            }
+            int i = (int) (h % slots);
+            int kind = kinds[i];
+            int code = codes[i];
+            int v = i * 6;
+            double x = values[v];
+            double y = values[v + 1];
+            double z = values[v + 2];
+            double xBoundary = values[v + 3];
+            double yBoundary = values[v + 4];
+            double zBoundary = values[v + 5];
+            head.lazySet(h + 1);
+            try {
+                switch (kind) {
+                    case PRESSED:
+                        buttonListener.buttonPressed(BUTTONS[code]);
+                        break;
+                    case RELEASED:
+                        buttonListener.buttonReleased(BUTTONS[code]);
+                        break;
+                    default:
+                        accelerometerListener.accelerometerValues(x, y, z, xBoundary, yBoundary, zBoundary);
+                }
+            } catch (RuntimeException ex) {
+                //a failure of the subscriber must not stop the delivery of the next events.
+                Logger.getLogger(Subscription.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+}
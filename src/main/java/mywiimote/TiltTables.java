@@ -0,0 +1,64 @@
+package mywiimote;
+
+/**
+ * Tables of the tilt (pitch and roll) of the wiimote for every raw value of
+ * the accelerometer. It is for implementation sake. Does not matter for
+ * library users.
+ *
+ * The tables are computed once per calibration, so the tilt of a sample costs
+ * a few array loads instead of trigonometric functions. The pitch depends only
+ * on the y axis (10 bits). The roll depends on the x and z axes and is indexed
+ * by their 8 most significant bits.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class TiltTables {
+
+    /**
+     * Pitch in degrees, indexed by the raw value of y.
+     */
+    private final float[] pitch = new float[AccelerometerSample.RANGE];
+
+    /**
+     * Roll in degrees, indexed by the 8 most significant bits of x (high byte
+     * of the index) and of z (low byte).
+     */
+    private final float[] roll = new float[256 * 256];
+
+    /**
+     * @param calibration calibration of the accelerometer.
+     */
+    TiltTables(Calibration calibration) {
+        double scaleY = calibration.oneY - calibration.zeroY;
+        for (int raw = 0; raw < pitch.length; raw++) {
+            double g = Math.max(-1.0, Math.min(1.0, (raw - calibration.zeroY) / scaleY));
+            pitch[raw] = (float) Math.toDegrees(Math.asin(g));
+        }
+        double scaleX = calibration.oneX - calibration.zeroX;
+        double scaleZ = calibration.oneZ - calibration.zeroZ;
+        for (int x = 0; x < 256; x++) {
+            double gx = ((x << 2) - calibration.zeroX) / scaleX;
+            for (int z = 0; z < 256; z++) {
+                double gz = ((z << 2) - calibration.zeroZ) / scaleZ;
+                roll[(x << 8) | z] = (float) Math.toDegrees(Math.atan2(0.0 - gx, gz));
+            }
+        }
+    }
+
+    /**
+     * @param rawY raw value (10 bits) of y.
+     * @return the pitch in degrees.
+     */
+    double pitch(int rawY) {
+        return pitch[rawY];
+    }
+
+    /**
+     * @param rawX raw value (10 bits) of x.
+     * @param rawZ raw value (10 bits) of z.
+     * @return the roll in degrees.
+     */
+    double roll(int rawX, int rawZ) {
+        return roll[((rawX >> 2) << 8) | (rawZ >> 2)];
+    }
+}
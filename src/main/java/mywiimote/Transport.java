@@ -0,0 +1,44 @@
+package mywiimote;
+
+import java.io.IOException;
+
+/**
+ * The link between the library and the wiimote. Every report sent to or
+ * received from the wiimote passes through a transport.
+ *
+ * The library provides a transport over L2CAP connections (used by
+ * {@link WiiMoteDriver#connect()}) and an in-memory one,
+ * {@link LoopbackTransport}, which allows the driver to be used without a
+ * wiimote.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+public interface Transport {
+
+    /**
+     * Sends a report to the wiimote.
+     *
+     * @param report the report, including the header byte (0xa2).
+     * @throws IOException if the report could not be sent.
+     */
+    public void send(byte[] report) throws IOException;
+
+    /**
+     * Waits for the next report of the wiimote and copies it into the buffer.
+     * If the report is bigger than the buffer, the remaining bytes are lost.
+     *
+     * @param buffer buffer supplied by the caller. Reused between calls.
+     * @return number of bytes copied into the buffer.
+     * @throws IOException if the transport is closed or the connection is
+     * lost.
+     */
+    public int receive(byte[] buffer) throws IOException;
+
+    /**
+     * Closes the transport. A thread waiting in receive will get an
+     * IOException.
+     *
+     * @throws IOException if the transport could not be closed.
+     */
+    public void close() throws IOException;
+}
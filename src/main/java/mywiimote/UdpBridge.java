@@ -0,0 +1,238 @@
+package mywiimote;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams the events of a wiimote over UDP to a remote
+ * {@link UdpBridgeClient}, e.g. from the machine with bluetooth to a game
+ * server.
+ *
+ * The events are written in a fixed binary layout (see below) into one
+ * reusable direct buffer. A datagram is sent when it is full or when its
+ * oldest event waited for the flush delay. Every datagram carries a sequence
+ * number, so the receiver can count the lost ones. The bridge is a subscriber
+ * of the driver, so the network never delays the wiimote or the listener.
+ *
+ * Layout of a datagram (big endian):
+ * <pre>
+ * header: magic (2 bytes, "WB"), version (1), number of events (1), sequence (4)
+ * event:  kind (1: 0 pressed, 1 released, 2 accelerometer), button (1), unused (2),
+ *         x, y, z, xBoundary, yBoundary, zBoundary (4 each, float; zero for buttons)
+ * </pre>
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+public class UdpBridge implements Runnable, ButtonListener, AccelerometerListener {
+
+    static final short MAGIC = 0x5742;
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int EVENT_SIZE = 28;
+
+    static final byte PRESSED = 0;
+    static final byte RELEASED = 1;
+    static final byte ACCELEROMETER = 2;
+
+    /**
+     * Most events per datagram, so the datagram fits in an ethernet frame
+     * (1472 bytes of UDP payload).
+     */
+    public static final int MAX_EVENTS = (1472 - HEADER_SIZE) / EVENT_SIZE;
+
+    /**
+     * Default maximum time, in milliseconds, that an event waits to be sent.
+     */
+    public static final long DEFAULT_FLUSH_DELAY = 5;
+
+    private final DatagramChannel channel;
+    private final ByteBuffer buffer;
+    private final int batchSize;
+    private final long flushDelay;
+
+    /**
+     * One subscription to the buttons and the accelerometer, so the events
+     * are sent in the order they happened.
+     */
+    private final Subscription subscription;
+
+    private final Thread thread;
+
+    private int count = 0;
+    private int sequence = 0;
+    private long deadline = 0;
+    private long sent = 0;
+    private boolean running = true;
+
+    private UdpBridge(WiiMoteDriver driver, DatagramChannel channel, int batchSize, long flushDelay) {
+        this.channel = channel;
+        this.batchSize = batchSize;
+        this.flushDelay = flushDelay;
+        buffer = ByteBuffer.allocateDirect(HEADER_SIZE + batchSize * EVENT_SIZE);
+        buffer.position(HEADER_SIZE);
+        thread = new Thread(this, "mywiimote-bridge");
+        thread.setDaemon(true);
+        thread.start();
+        subscription = driver.subscribe(this, this, Subscription.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Starts streaming the events of the driver.
+     *
+     * @param driver the driver of the wiimote.
+     * @param target address of the {@link UdpBridgeClient}.
+     * @return the bridge. Close it to stop streaming.
+     * @throws IOException if the channel could not be opened.
+     */
+    public static UdpBridge open(WiiMoteDriver driver, InetSocketAddress target) throws IOException {
+        return open(driver, target, MAX_EVENTS, DEFAULT_FLUSH_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts streaming the events of the driver.
+     *
+     * @param driver the driver of the wiimote.
+     * @param target address of the {@link UdpBridgeClient}.
+     * @param batchSize most events per datagram, up to {@link #MAX_EVENTS}. 1
+     * sends every event at once.
+     * @param flushDelay maximum time that an event waits to be sent.
+     * @param unit unit of the delay.
+     * @return the bridge. Close it to stop streaming.
+     * @throws IOException if the channel could not be opened.
+     */
+    public static UdpBridge open(WiiMoteDriver driver, InetSocketAddress target, int batchSize, long flushDelay, TimeUnit unit) throws IOException {
+        if (batchSize < 1 || batchSize > MAX_EVENTS) {
+            throw new IllegalArgumentException("batch size must be between 1 and " + MAX_EVENTS + ": " + batchSize);
+        }
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            channel.connect(target);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        return new UdpBridge(driver, channel, batchSize, unit.toNanos(flushDelay));
+    }
+
+    @Override
+    public void buttonPressed(ButtonEnum button) {
+        add(PRESSED, button.ordinal(), 0, 0, 0, 0, 0, 0);
+    }
+
+    @Override
+    public void buttonReleased(ButtonEnum button) {
+        add(RELEASED, button.ordinal(), 0, 0, 0, 0, 0, 0);
+    }
+
+    @Override
+    public void accelerometerValues(double x, double y, double z, double xBoundary, double yBoundary, double zBoundary) {
+        add(ACCELEROMETER, 0, x, y, z, xBoundary, yBoundary, zBoundary);
+    }
+
+    private synchronized void add(byte kind, int code, double x, double y, double z, double xBoundary, double yBoundary, double zBoundary) {
+        if (!running) {
+            return;
+        }
+        buffer.put(kind);
+        buffer.put((byte) code);
+        buffer.putShort((short) 0);
+        buffer.putFloat((float) x);
+        buffer.putFloat((float) y);
+        buffer.putFloat((float) z);
+        buffer.putFloat((float) xBoundary);
+        buffer.putFloat((float) yBoundary);
+        buffer.putFloat((float) zBoundary);
+        if (++count == 1) {
+            deadline = System.nanoTime() + flushDelay;
+            notifyAll();
+        }
+        if (count == batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the events in the buffer. Must be called holding the lock.
+     */
+    private void flush() {
+        if (count == 0) {
+            return;
+        }
+        buffer.putShort(0, MAGIC);
+        buffer.put(2, VERSION);
+        buffer.put(3, (byte) count);
+        buffer.putInt(4, sequence++);
+        buffer.flip();
+        try {
+            channel.write(buffer);
+            sent++;
+        } catch (IOException ex) {
+            Logger.getLogger(UdpBridge.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        buffer.clear();
+        buffer.position(HEADER_SIZE);
+        count = 0;
+    }
+
+    /**
+     * Loop of the thread that sends the events that waited for the flush
+     * delay.
+     */
+    @Override
+    public synchronized void run() {
+        while (running) {
+            try {
+                if (count == 0) {
+                    wait();
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        flush();
+                    } else {
+                        wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Logger.getLogger(UdpBridge.class.getName()).log(Level.SEVERE, null, ex);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return number of datagrams sent.
+     */
+    public synchronized long getSent() {
+        return sent;
+    }
+
+    /**
+     * @return number of events discarded because the bridge could not keep up
+     * with the wiimote.
+     */
+    public long getDropped() {
+        return subscription.getDropped();
+    }
+
+    /**
+     * Sends the events still in the buffer and stops streaming.
+     */
+    public void close() {
+        subscription.cancel();
+        synchronized (this) {
+            flush();
+            running = false;
+            notifyAll();
+        }
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            Logger.getLogger(UdpBridge.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package mywiimote;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.DatagramChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Receives the events streamed by a {@link UdpBridge} and notifies a local
+ * listener, as if the wiimote were connected to this machine.
+ *
+ * The datagrams are read into one reusable direct buffer by a dedicated
+ * thread, which also notifies the listener. Missing sequence numbers are
+ * counted as lost datagrams. A sequence number far behind the expected one
+ * starts a new stream, e.g. after the bridge was restarted.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+public class UdpBridgeClient implements Runnable {
+
+    private static final ButtonEnum[] BUTTONS = ButtonEnum.values();
+
+    /**
+     * How far behind the expected sequence number a datagram is taken as late
+     * instead of as the start of a new stream.
+     */
+    static final int REORDER_WINDOW = 64;
+
+    private final DatagramChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1500);
+    private final WiiMoteListener listener;
+    private final Button[] buttons;
+    private final Thread thread;
+
+    private volatile long received = 0;
+    private volatile long lost = 0;
+    private volatile long invalid = 0;
+    private int expected = 0;
+
+    private UdpBridgeClient(DatagramChannel channel, WiiMoteListener listener) {
+        this.channel = channel;
+        this.listener = listener;
+        buttons = new Button[BUTTONS.length];
+        for (ButtonEnum b : BUTTONS) {
+            buttons[b.ordinal()] = new Button(listener, b);
+        }
+        thread = new Thread(this, "mywiimote-bridge-client");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts receiving the events of a bridge.
+     *
+     * @param port UDP port where the bridge sends the events. 0 picks a free
+     * port (see {@link #getLocalAddress}).
+     * @param listener notified with the events, from the thread of the client.
+     * @return the client. Close it to stop receiving.
+     * @throws IOException if the port could not be bound.
+     */
+    public static UdpBridgeClient open(int port, WiiMoteListener listener) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            channel.bind(new InetSocketAddress(port));
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        return new UdpBridgeClient(channel, listener);
+    }
+
+    /**
+     * Loop of the thread that receives the datagrams.
+     */
+    @Override
+    public void run() {
+        while (channel.isOpen()) {
+            buffer.clear();
+            try {
+                channel.receive(buffer);
+            } catch (AsynchronousCloseException ex) {
+                return;
+            } catch (IOException ex) {
+                Logger.getLogger(UdpBridgeClient.class.getName()).log(Level.SEVERE, null, ex);
+                return;
+            }
+            buffer.flip();
+            decode();
+        }
+    }
+
+    private void decode() {
+        if (buffer.remaining() < UdpBridge.HEADER_SIZE
+                || buffer.getShort(0) != UdpBridge.MAGIC || buffer.get(2) != UdpBridge.VERSION) {
+            invalid++;
+            return;
+        }
+        int count = buffer.get(3) & 0xFF;
+        int sequence = buffer.getInt(4);
+        if (buffer.remaining() < UdpBridge.HEADER_SIZE + count * UdpBridge.EVENT_SIZE) {
+            invalid++;
+            return;
+        }
+        if (received > 0) {
+            int gap = sequence - expected;
+            if (gap < 0 && gap > -REORDER_WINDOW) {
+                //late or duplicated: its events are older than the ones already notified.
+                return;
+            }
+            if (gap > 0) {
+                lost += gap;
+            }
+        }
+        expected = sequence + 1;
+        received++;
+        int p = UdpBridge.HEADER_SIZE;
+        for (int i = 0; i < count; i++, p += UdpBridge.EVENT_SIZE) {
+            byte kind = buffer.get(p);
+            int code = buffer.get(p + 1) & 0xFF;
+            try {
+                if (kind == UdpBridge.ACCELEROMETER) {
+                    listener.accelerometerValues(buffer.getFloat(p + 4), buffer.getFloat(p + 8), buffer.getFloat(p + 12),
+                            buffer.getFloat(p + 16), buffer.getFloat(p + 20), buffer.getFloat(p + 24));
+                } else if (code < buttons.length && kind == UdpBridge.PRESSED) {
+                    buttons[code].press();
+                } else if (code < buttons.length && kind == UdpBridge.RELEASED) {
+                    buttons[code].release();
+                }
+            } catch (RuntimeException ex) {
+                //a failure of the client must not stop the delivery of the next events.
+                Logger.getLogger(UdpBridgeClient.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    /**
+     * @return the address where the client receives the datagrams, or null if
+     * closed.
+     */
+    public InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress) channel.getLocalAddress();
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return number of datagrams received.
+     */
+    public long getReceived() {
+        return received;
+    }
+
+    /**
+     * @return number of datagrams lost, according to the sequence numbers.
+     */
+    public long getLost() {
+        return lost;
+    }
+
+    /**
+     * @return number of datagrams ignored because they were not sent by a
+     * bridge.
+     */
+    public long getInvalid() {
+        return invalid;
+    }
+
+    /**
+     * Stops receiving.
+     */
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            Logger.getLogger(UdpBridgeClient.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+}
@@ -23,4 +23,18 @@ class Util {
         return ans;
 
     }
+
+    /**
+     * Transforms a binary representation to hexadecimal value.
+     * 
+     * @param data byte array.
+     * @return value in hexadecimal (lower case).
+     */
+    static String byteArrayToHex(byte[] data) {
+        StringBuilder ans = new StringBuilder(data.length * 2);
+        for (byte b : data) {
+            ans.append(Character.forDigit((b >> 4) & 0x0F, 16)).append(Character.forDigit(b & 0x0F, 16));
+        }
+        return ans.toString();
+    }
 }
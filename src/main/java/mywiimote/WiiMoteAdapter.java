@@ -0,0 +1,96 @@
+package mywiimote;
+
+/**
+ * Listener that ignores every event. Extend it and override only the methods
+ * of the events that matter, e.g. when the application uses subscribers
+ * instead of the listener.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ * @see WiiMoteDriver#subscribe(ButtonListener, int)
+ */
+public class WiiMoteAdapter implements WiiMoteListener {
+
+    @Override
+    public void buttonPlusPressed() {
+    }
+
+    @Override
+    public void buttonMinusPressed() {
+    }
+
+    @Override
+    public void buttonAPressed() {
+    }
+
+    @Override
+    public void buttonBPressed() {
+    }
+
+    @Override
+    public void button1Pressed() {
+    }
+
+    @Override
+    public void button2Pressed() {
+    }
+
+    @Override
+    public void buttonLeftPressed() {
+    }
+
+    @Override
+    public void buttonRightPressed() {
+    }
+
+    @Override
+    public void buttonUpPressed() {
+    }
+
+    @Override
+    public void buttonDownPressed() {
+    }
+
+    @Override
+    public void buttonPlusReleased() {
+    }
+
+    @Override
+    public void buttonMinusReleased() {
+    }
+
+    @Override
+    public void buttonAReleased() {
+    }
+
+    @Override
+    public void buttonBReleased() {
+    }
+
+    @Override
+    public void button1Released() {
+    }
+
+    @Override
+    public void button2Released() {
+    }
+
+    @Override
+    public void buttonLeftReleased() {
+    }
+
+    @Override
+    public void buttonRightReleased() {
+    }
+
+    @Override
+    public void buttonUpReleased() {
+    }
+
+    @Override
+    public void buttonDownReleased() {
+    }
+
+    @Override
+    public void accelerometerValues(double x, double y, double z, double xBoundary, double yBoundary, double zBoundary) {
+    }
+}
@@ -1,26 +1,33 @@
 package mywiimote;
 
-import static mywiimote.Util.hexToByteArray;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.bluetooth.BluetoothStateException;
 import javax.bluetooth.DeviceClass;
 import javax.bluetooth.DiscoveryAgent;
 import javax.bluetooth.DiscoveryListener;
-import javax.bluetooth.L2CAPConnection;
 import javax.bluetooth.LocalDevice;
 import javax.bluetooth.RemoteDevice;
 import javax.bluetooth.ServiceRecord;
-import javax.microedition.io.Connector;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * The main class for library clients.
  *
  * This class is responsible for connection with the wiimote. To connect to the
  * wiimote, this class uses L2CAP connection, according to wiimote protocol.
+ * Other links can be used through the {@link Transport} interface.
  *
  * The protocol to communicate with the wiimote is based on what was described
  * at: https://wiibrew.org.
@@ -39,20 +46,53 @@ public class WiiMoteDriver implements DiscoveryListener {
     private RemoteDevice control = null;
 
     /**
-     * Controls the thread of inquiring process.
+     * Bluetooth address of the wiimote. Known after the discovery, or taken
+     * from the cache of known wiimotes.
      */
-    final Object inquiryCompletedEvent = new Object();
+    private volatile String address = null;
 
     /**
-     * L2CAP Connection for controlling. Still figuring out what for... Useless
-     * for now.
+     * Cache of the wiimotes already connected.
      */
-    private L2CAPConnection controlPipe = null;
+    private KnownDevices knownDevices = KnownDevices.inUserHome();
 
     /**
-     * L2CAP Connection for sending and receiving data.
+     * Indicates if the driver connects again when the connection is lost.
      */
-    private L2CAPConnection dataPipe = null;
+    private volatile boolean autoReconnect = false;
+
+    /**
+     * Indicates that the client asked to disconnect, so a lost connection must
+     * not be connected again.
+     */
+    private volatile boolean closing = false;
+
+    /**
+     * Interval, in milliseconds, between the attempts to connect again.
+     */
+    private static final long RECONNECT_DELAY = 500;
+
+    /**
+     * Number of the player. Indicates which led is turned on when connected.
+     */
+    private int player = 1;
+
+    /**
+     * Interval, in milliseconds, before trying again an inquiry that could not
+     * be started.
+     */
+    private static final long INQUIRY_RETRY_DELAY = 1000;
+
+    /**
+     * Result of the discovery in progress. Completed when the wiimote is
+     * found.
+     */
+    private volatile CompletableFuture<Boolean> discovery = null;
+
+    /**
+     * Link with the wiimote. Every report is sent and received through it.
+     */
+    private Transport transport = null;
 
     /**
      * Represents the client of the library. Every event occurred will be
@@ -61,20 +101,16 @@ public class WiiMoteDriver implements DiscoveryListener {
     private WiiMoteListener listener = null;
 
     /**
-     * Map of the buttons for the first byte of data sent by the wiimote. Map
-     * for: Pad Left, Pad Right, Pad Down, Pad Up, Button Plus. The id
-     * (hexadecimal transformed to decimal) of the button refers to value sent
-     * by the wiimote.
+     * State of the buttons. Compares the button bytes of every report with the
+     * previous report, notifying the listener about presses and releases.
      */
-    private HashMap<Integer, Button> buttonsByte1 = new HashMap();
+    private ButtonState buttons = null;
 
     /**
-     * Map of the buttons for the second byte of data sent by the wiimote. Map
-     * for: Button 2, Button 1, Button B, Button A, Button Minus. The id
-     * (hexadecimal transformed to decimal) of the button refers to value sent
-     * by the wiimote.
+     * Delivers the events to the listener, in the order they were received,
+     * from its own thread.
      */
-    private HashMap<Integer, Button> buttonsByte2 = new HashMap();
+    private EventDispatcher dispatcher = null;
 
     /**
      * Indicates the sensitivity of the accelerometer.
@@ -88,17 +124,214 @@ public class WiiMoteDriver implements DiscoveryListener {
      * The follow attribute specifies the value that determines the boundary of
      * positive or negative acceleration in x axis.
      */
-    private double xBoundary = 0.0; //will store the value of wiimote in x axis without movement. 
+    private volatile double xBoundary = 0.0; //will store the value of wiimote in x axis without movement. 
     /**
      * The follow attribute specifies the value that determines the boundary of
      * positive or negative acceleration in y axis.
      */
-    private double yBoundary = 0.0; //will store the value of wiimote in y axis without movement.
+    private volatile double yBoundary = 0.0; //will store the value of wiimote in y axis without movement.
     /**
      * The follow attribute specifies the value that determines the boundary of
      * positive or negative acceleration in z axis.
      */
-    private double zBoundary = 0.0; //will store the value of wiimote in z axis without movement.
+    private volatile double zBoundary = 0.0; //will store the value of wiimote in z axis without movement.
+
+    /**
+     * Factory calibration of the accelerometer, read from the EEPROM of the
+     * wiimote or from the cache of known wiimotes. The typical calibration
+     * while unknown.
+     */
+    private volatile Calibration calibration = Calibration.TYPICAL;
+
+    /**
+     * Tables of the tilt for the calibration. Built when the orientation
+     * listener is set or the calibration changes.
+     */
+    private volatile TiltTables tilt = null;
+
+    /**
+     * Report id of the data read from the memory of the wiimote.
+     */
+    private static final int READ_DATA = 0x21;
+
+    /**
+     * Report id of the acknowledgement of an output report (e.g. a write).
+     */
+    private static final int ACKNOWLEDGE = 0x22;
+
+    /**
+     * Report id of the status of the wiimote (leds, battery and extension).
+     */
+    private static final int STATUS = 0x20;
+
+    /**
+     * Flags of the status report: battery nearly empty and extension plugged.
+     */
+    private static final int BATTERY_LOW = 0x01;
+    private static final int EXTENSION_PLUGGED = 0x02;
+
+    /**
+     * Battery level of a full battery, as reported in the status report.
+     */
+    private static final double BATTERY_FULL = 200.0;
+
+    /**
+     * Handles the control reports (status, data read, acknowledgements) away
+     * from the thread receiving data.
+     */
+    private final ControlChannel controlChannel = new ControlChannel(this::controlReport);
+
+    /**
+     * Last battery level reported (0 to 255), or -1 if not reported yet.
+     */
+    private volatile int battery = -1;
+
+    private volatile boolean batteryLow = false;
+
+    /**
+     * Registers of the extension: initialization (unencrypted) and identifier.
+     */
+    private static final int EXTENSION_INIT1 = 0xa400f0;
+    private static final int EXTENSION_INIT2 = 0xa400fb;
+    private static final int EXTENSION_ID = 0xa400fa;
+
+    /**
+     * True while an extension is plugged, according to the status reports.
+     */
+    private volatile boolean extensionPlugged = false;
+
+    /**
+     * True while the plugged extension is a Nunchuk, initialized.
+     */
+    private volatile boolean nunchukConnected = false;
+
+    /**
+     * Interprets the data of the Nunchuk.
+     */
+    private Nunchuk nunchuk = null;
+
+    /**
+     * Registers of the IR camera: control, sensitivity blocks and format.
+     */
+    private static final int IR_CONTROL = 0xb00030;
+    private static final int IR_SENSITIVITY1 = 0xb00000;
+    private static final int IR_SENSITIVITY2 = 0xb0001a;
+    private static final int IR_FORMAT = 0xb00033;
+
+    /**
+     * Sensitivity of the camera suggested for the sensor bar (level 3).
+     */
+    private static final byte[] SENSITIVITY1 = {0x02, 0x00, 0x00, 0x71, 0x01, 0x00, (byte) 0xaa, 0x00, 0x64};
+    private static final byte[] SENSITIVITY2 = {0x63, 0x03};
+
+    /**
+     * Format of the IR data for the interleaved mode.
+     */
+    private static final int IR_FULL = 5;
+
+    /**
+     * True if the client wants the IR camera.
+     */
+    private volatile boolean irEnabled = false;
+
+    /**
+     * Format the camera was set to (IRPointer.BASIC or EXTENDED), or 0 if
+     * turned off.
+     */
+    private volatile int irFormat = 0;
+
+    /**
+     * Turns the data of the IR camera into a pointer.
+     */
+    private IRPointer pointer = null;
+
+    /**
+     * Reporting mode requested to the wiimote.
+     */
+    private volatile ReportMode mode = ReportMode.BUTTONS_ACCELEROMETER;
+
+    /**
+     * Indicates if the wiimote sends reports continuously, or only when the
+     * data changes.
+     */
+    private volatile boolean continuous = false;
+
+    /**
+     * Measures the cadence of the reports.
+     */
+    private final ReportRate rate = new ReportRate();
+
+    /*
+     * Accelerometer data of the first report of the interleaved mode, kept
+     * until the second report arrives.
+     */
+    private byte interleavedX = 0;
+    private int interleavedZ = 0;
+
+    /**
+     * Sample of the accelerometer in the current report. Reused for every
+     * report.
+     */
+    private final AccelerometerSample sample = new AccelerometerSample();
+
+    /**
+     * Sample of the accelerometer in the previous report. Reused for every
+     * report.
+     */
+    private final AccelerometerSample last = new AccelerometerSample();
+
+    /**
+     * Stages of the pipeline that filters the accelerometer. If null, the
+     * sensitivity is used.
+     */
+    private volatile AccelerometerFilter[] filters = null;
+
+    /*
+     * Values passed through the stages. Reused for every report.
+     */
+    private final double[] filterValues = new double[3];
+    private final double[] filterBoundaries = new double[3];
+
+    /**
+     * Sends the reports of leds and rumble without blocking the client.
+     */
+    private final OutputScheduler output = new OutputScheduler();
+
+    /**
+     * Reads and writes the memory of the wiimote.
+     */
+    private final MemoryEngine memory = new MemoryEngine(output);
+
+    /**
+     * Records the reports received, if a recording was started.
+     */
+    private volatile ReportRecorder recorder = null;
+
+    /**
+     * Subscribers of the events, besides the listener.
+     */
+    private final EventBus bus = new EventBus();
+
+    /**
+     * Counters and histograms of the driver.
+     */
+    private WiiMoteMetrics metrics = null;
+
+    /**
+     * Name of the metrics in the platform MBean server, if registered.
+     */
+    private ObjectName metricsName = null;
+
+    /**
+     * Number of drivers created, to name the metrics of a driver without
+     * address.
+     */
+    private static final AtomicInteger DRIVERS = new AtomicInteger();
+
+    /**
+     * Number of this driver, among the drivers created.
+     */
+    private final int number = DRIVERS.incrementAndGet();
 
     /**
      * Default constructor. Expects the client of the library as an argument.
@@ -108,53 +341,126 @@ public class WiiMoteDriver implements DiscoveryListener {
      * @param sensitivity sensitivity of the accelerometer.
      */
     public WiiMoteDriver(WiiMoteListener listener, double sensitivity) {
+        this(listener, sensitivity, EventDispatcher.DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Constructor that also configures the queue of events. The events are
+     * delivered to the listener by a dedicated thread, so the listener does not
+     * delay the receiving of data from the wiimote. If the listener is slower
+     * than the wiimote, the queue fills up and the policy decides what to do.
+     *
+     * @param listener client of the library.
+     * @param sensitivity sensitivity of the accelerometer.
+     * @param queueCapacity maximum number of events waiting to be delivered,
+     * greater than 13.
+     * @param policy what to do when the queue of events is full.
+     */
+    public WiiMoteDriver(WiiMoteListener listener, double sensitivity, int queueCapacity, OverflowPolicy policy) {
         System.setProperty("bluecove.jsr82.psm_minimum_off", "true");
         this.listener = listener;
         this.sensitivity = sensitivity;
-        buttonsByte1.put(1, new Button(listener, ButtonEnum.BL));
-        buttonsByte1.put(2, new Button(listener, ButtonEnum.BR));
-        buttonsByte1.put(4, new Button(listener, ButtonEnum.BD));
-        buttonsByte1.put(8, new Button(listener, ButtonEnum.BU));
-        buttonsByte1.put(16, new Button(listener, ButtonEnum.BP));
-        buttonsByte2.put(1, new Button(listener, ButtonEnum.B2));
-        buttonsByte2.put(2, new Button(listener, ButtonEnum.B1));
-        buttonsByte2.put(4, new Button(listener, ButtonEnum.BB));
-        buttonsByte2.put(8, new Button(listener, ButtonEnum.BA));
-        buttonsByte2.put(16, new Button(listener, ButtonEnum.BM));
+        LatencyHistogram latency = new LatencyHistogram();
+        dispatcher = new EventDispatcher(listener, queueCapacity, policy, latency, bus);
+        buttons = new ButtonState(dispatcher);
+        nunchuk = new Nunchuk(dispatcher);
+        pointer = new IRPointer(dispatcher);
+        metrics = new WiiMoteMetrics(rate, dispatcher, output, latency);
+        setCalibration(Calibration.TYPICAL);
     }
 
     /**
-     * Method to find the bluetooth devices.
+     * Method to find the bluetooth devices. Waits until the wiimote is found.
      *
      * @return true if the wiimote was found, false otherwise.
      */
     public boolean discover() {
+        CompletableFuture<Boolean> future = discoverAsync(0, TimeUnit.MILLISECONDS);
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (ExecutionException ex) {
+            Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return false;
+    }
 
-        synchronized (inquiryCompletedEvent) {
-            try {
-                DiscoveryAgent agent = LocalDevice.getLocalDevice().getDiscoveryAgent();
-                boolean started = agent.startInquiry(DiscoveryAgent.GIAC, this);
-                while (control == null) {
-                    if (started) {
-                        System.out.println("wait for device inquiry to complete...");
-                        inquiryCompletedEvent.wait();
-                        if (control != null) {
-                            System.out.println("Wii Remote found: " + control.getFriendlyName(false));
-                            return true;
-                        }
-                        started = agent.startInquiry(DiscoveryAgent.GIAC, this);
-                    }
-                }
-            } catch (BluetoothStateException ex) {
-                Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
-            } catch (InterruptedException ex) {
-                Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
-            } catch (IOException ex) {
-                Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
+    /**
+     * Method to find the bluetooth devices without waiting. The inquiry is
+     * repeated until the wiimote is found or the timeout expires.
+     *
+     * The future is completed with true as soon as the wiimote is found (the
+     * inquiry is not waited to complete), with false if the timeout expires,
+     * or exceptionally if the bluetooth stack fails. Cancelling the future
+     * cancels the inquiry.
+     *
+     * @param timeout maximum time to find the wiimote. If 0 or less, there is
+     * no timeout.
+     * @param unit unit of the timeout.
+     * @return the result of the discovery.
+     */
+    public CompletableFuture<Boolean> discoverAsync(long timeout, TimeUnit unit) {
+        CompletableFuture<Boolean> previous = discovery;
+        if (previous != null) {
+            previous.cancel(false);
+        }
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        control = null;
+        address = null;
+        discovery = future;
+        if (timeout > 0) {
+            future.completeOnTimeout(false, timeout, unit);
+        }
+        future.whenComplete((found, ex) -> {
+            //nothing to cancel if the bluetooth stack failed.
+            if (ex == null || ex instanceof CancellationException) {
+                cancelInquiry();
             }
+        });
+        startInquiry(future);
+        return future;
+    }
 
+    /**
+     * Starts an inquiry for the discovery, unless it is already completed. If
+     * the inquiry can not be started now, it is tried again later.
+     *
+     * @param future the discovery.
+     */
+    private void startInquiry(CompletableFuture<Boolean> future) {
+        if (future.isDone()) {
+            return;
+        }
+        try {
+            DiscoveryAgent agent = LocalDevice.getLocalDevice().getDiscoveryAgent();
+            if (agent.startInquiry(DiscoveryAgent.GIAC, this)) {
+                System.out.println("wait for device inquiry to complete...");
+                return;
+            }
+        } catch (BluetoothStateException ex) {
+            future.completeExceptionally(ex);
+            return;
+        }
+        retryInquiry(future);
+    }
+
+    private void retryInquiry(CompletableFuture<Boolean> future) {
+        CompletableFuture.runAsync(() -> startInquiry(future),
+                CompletableFuture.delayedExecutor(INQUIRY_RETRY_DELAY, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Cancels the inquiry of this driver, if one is running.
+     */
+    private void cancelInquiry() {
+        try {
+            LocalDevice.getLocalDevice().getDiscoveryAgent().cancelInquiry(this);
+        } catch (BluetoothStateException ex) {
+            Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
         }
-        return false;
     }
 
     /**
@@ -167,10 +473,17 @@ public class WiiMoteDriver implements DiscoveryListener {
     public void deviceDiscovered(RemoteDevice btDevice, DeviceClass cod) {
         try {
             // If the device is not a wiimote (and a valid model), there is nothing to do.
-            if (isValid(btDevice.getFriendlyName(false))) {
+            String name = btDevice.getFriendlyName(false);
+            if (Model.isValid(name)) {
                 control = btDevice;
+                address = btDevice.getBluetoothAddress();
+                System.out.println("Wii Remote found: " + name);
+                CompletableFuture<Boolean> future = discovery;
+                if (future != null) {
+                    future.complete(true);
+                }
             } else {
-                System.out.println("Discarting: " + btDevice.getFriendlyName(false));
+                System.out.println("Discarting: " + name);
             }
         } catch (IOException ex) {
             System.out.println("Discarting unknown device...");
@@ -178,13 +491,22 @@ public class WiiMoteDriver implements DiscoveryListener {
     }
 
     /**
-     * Just informs if the inquiring process is completed.
+     * Informs if the inquiring process is completed. If the wiimote was not
+     * found yet, a new inquiry is started.
      */
     @Override
     public void inquiryCompleted(int discType) {
         System.out.println("Device Inquiry completed!");
-        synchronized (inquiryCompletedEvent) {
-            inquiryCompletedEvent.notifyAll();
+        CompletableFuture<Boolean> future = discovery;
+        if (future == null || future.isDone()) {
+            return;
+        }
+        if (control != null) {
+            future.complete(true);
+        } else if (discType == INQUIRY_ERROR) {
+            retryInquiry(future);
+        } else {
+            startInquiry(future);
         }
     }
 
@@ -204,18 +526,6 @@ public class WiiMoteDriver implements DiscoveryListener {
         //Nothing to do so far.
     }
 
-    /**
-     * Indicate if the model of bluetooth device is valid. To be valid, the
-     * device must comply with the list of the models listed in @class Model.
-     *
-     * @param model name of the model
-     * @return true if valid. False otherwise.
-     */
-    private boolean isValid(String model) {
-        var ret = Arrays.stream(Model.values()).anyMatch((t) -> t.getModelName().equals(model));
-        return ret;
-    }
-
     /**
      * This method is responsible for connection with the wiimote. The method
      * estabilish two connections: one for control and another for data.
@@ -227,22 +537,99 @@ public class WiiMoteDriver implements DiscoveryListener {
      */
     public boolean connect() {
         System.out.println("Connecting...");
-        String controlAddress = "btl2cap://" + control.getBluetoothAddress() + ":11;authenticate=false;encrypt=false;master=false";
-        String dataAddress = "btl2cap://" + control.getBluetoothAddress() + ":13;authenticate=false;encrypt=false;master=false";
         try {
-            controlPipe = (L2CAPConnection) Connector.open(controlAddress);
-            dataPipe = (L2CAPConnection) Connector.open(dataAddress);
-            pairing();
-            turnOnLed(1);
+            if (connect(L2CAPTransport.open(address))) {
+                knownDevices.remember(address);
+                return true;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Connects to a wiimote without the inquiry, when possible. The wiimotes
+     * already connected (kept in a cache file) are tried first, the most
+     * recent first. Only if none of them answers, the inquiry is performed.
+     *
+     * @return true if connection was a successfull. False otherwise.
+     */
+    public boolean connectKnownOrDiscover() {
+        for (String known : knownDevices.addresses()) {
+            System.out.println("Connecting to known Wii Remote: " + known);
+            try {
+                if (connect(known, L2CAPTransport.open(known))) {
+                    knownDevices.remember(known);
+                    return true;
+                }
+            } catch (IOException ex) {
+                System.out.println("Known Wii Remote not available: " + known);
+            }
+        }
+        return discover() && connect();
+    }
+
+    /**
+     * Connects the driver to a wiimote through the given transport. Useful to
+     * use the driver without a real wiimote, e.g. with a
+     * {@link LoopbackTransport}.
+     *
+     * @param transport link with the wiimote.
+     * @return true if connection was a successfull. False otherwise.
+     */
+    public boolean connect(Transport transport) {
+        return connect(address, transport);
+    }
+
+    /**
+     * Connects the driver to the wiimote with the given address through the
+     * given transport. The address is known before the handshake, so the
+     * calibration cached for it is used.
+     *
+     * @param address bluetooth address of the wiimote.
+     * @param transport link with the wiimote.
+     * @return true if connection was a successfull. False otherwise.
+     */
+    boolean connect(String address, Transport transport) {
+        this.address = address;
+        this.transport = transport;
+        closing = false;
+        extensionPlugged = false;
+        nunchukConnected = false;
+        irFormat = 0;
+        AccelerometerFilter[] stages = filters;
+        if (stages != null) {
+            for (AccelerometerFilter stage : stages) {
+                stage.reset();
+            }
+        }
+        output.setTransport(transport);
+        memory.connected(address);
+        try {
+            turnOnLed(player);
             setMode();
+            Calibration cached = address == null ? null : knownDevices.calibration(address);
+            if (cached != null) {
+                setCalibration(cached);
+            } else {
+                //the events start at once with the typical calibration, replaced when the read completes.
+                setCalibration(Calibration.TYPICAL);
+                readCalibration();
+            }
+            if (irEnabled) {
+                enableCamera();
+            }
+            requestStatus();
         } catch (IOException e) {
             try {
-                controlPipe.close();
-                dataPipe.close();
+                transport.close();
             } catch (IOException ex) {
                 Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
             }
-
+            this.transport = null;
+            output.setTransport(null);
+            memory.disconnected();
             e.printStackTrace();
             return false;
         }
@@ -255,221 +642,1214 @@ public class WiiMoteDriver implements DiscoveryListener {
      * @return true if succeed. False otherwise.
      */
     public boolean disconnect() {
-        if (controlPipe != null && dataPipe != null) {
+        closing = true;
+        if (transport != null) {
             try {
-                controlPipe.close();
-                dataPipe.close();
+                transport.close();
             } catch (IOException ex) {
                 Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
             }
+            transport = null;
+            memory.disconnected();
             control = null;
         }
+        output.close();
+        controlChannel.close();
         return true;
     }
 
     /**
-     * Method for setting mode of protocol. This mode returns data from the
-     * buttons and the accelerometer in the Wii Remote. This library only
-     * supports the mode 0x31. Should be called before receiving any data.
+     * Method for setting mode of protocol. By default, the mode returns data
+     * from the buttons and the accelerometer in the Wii Remote (0x31). Should
+     * be called before receiving any data.
      */
-    private void setMode() {
-        byte[] report = hexToByteArray("a2120031");
-
-        try {
-            System.out.println("Changing mode...");
-            dataPipe.send(report);
-
-        } catch (IOException ex) {
-            Logger.getLogger(WiiMoteDriver.class
-                    .getName()).log(Level.SEVERE, null, ex);
+    private void setMode() throws IOException {
+        ReportMode m = effectiveMode();
+        int format = irFormat(m);
+        if (irFormat != 0 && format != irFormat) {
+            //the format of the camera must match the size of the IR data of the mode.
+            writeRegister(IR_FORMAT, format).whenComplete(this::logFailure);
+            irFormat = format;
         }
+        byte[] report = {(byte) 0xa2, 0x12, (byte) (continuous ? 0x04 : 0x00), (byte) m.getId()};
+
+        System.out.println("Changing mode...");
+        output.send(report);
+        rate.reset();
     }
 
     /**
-     * Method for paring process. Should be called just after the connection.
+     * Enables or disables the continuous reporting. When enabled, the wiimote
+     * sends reports at a fixed cadence (about 100 per second), even if nothing
+     * changes. When disabled (the default), the wiimote only sends a report
+     * when the data changes. Can be called at any time.
      *
-     * The message includes the bluetooth address of wiimote backwards.
-     *
-     * @return true if the paring is performed. False otherwise.
+     * @param continuous true to enable.
+     * @return true if the change was sent (or will be, when connected). False
+     * otherwise.
      */
-    private boolean pairing() {
-        String val6 = control.getBluetoothAddress().substring(10, 12);
-        String val5 = control.getBluetoothAddress().substring(8, 10);
-        String val4 = control.getBluetoothAddress().substring(6, 8);
-        String val3 = control.getBluetoothAddress().substring(4, 6);
-        String val2 = control.getBluetoothAddress().substring(2, 4);
-        String val1 = control.getBluetoothAddress().substring(0, 2);
-
-        String regularAddress = val1 + val2 + val3 + val4 + val5 + val6;
-        String inverseAddress = val6 + val5 + val4 + val3 + val2 + val1;
+    public boolean setContinuousReporting(boolean continuous) {
+        this.continuous = continuous;
+        return setReportMode(mode);
+    }
 
-//        try {
-//            val6 = LocalDevice.getLocalDevice().getBluetoothAddress().substring(10, 12);
-//            val5 = LocalDevice.getLocalDevice().getBluetoothAddress().substring(8, 10);
-//            val4 = LocalDevice.getLocalDevice().getBluetoothAddress().substring(6, 8);
-//            val3 = LocalDevice.getLocalDevice().getBluetoothAddress().substring(4, 6);
-//            val2 = LocalDevice.getLocalDevice().getBluetoothAddress().substring(2, 4);
-//            val1 = LocalDevice.getLocalDevice().getBluetoothAddress().substring(0, 2);
-//
-//        } catch (BluetoothStateException ex) {
-//            Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
-//        }
-//
-//        regularAddress = val1 + val2 + val3 + val4 + val5 + val6;
-//        inverseAddress = val6 + val5 + val4 + val3 + val2 + val1;
-        byte[] data = hexToByteArray(inverseAddress);
-        try {
-            controlPipe.send(data);
-        } catch (IOException ex) {
-            Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
-        }
-        return true;
+    /**
+     * @return true if the continuous reporting is enabled.
+     */
+    public boolean isContinuousReporting() {
+        return continuous;
     }
 
     /**
-     * Method for turn on the rumble feature.
-     * 
-     * @param time indicates time in milliseconds to turn off rumble. 
-     * If the value is 0, rumble will not turned off automatically. 
+     * Observed rate of reports. With continuous reporting, it should be close
+     * to 100 reports per second; a lower rate indicates a degraded link.
+     *
+     * @return reports per second, smoothed. 0 if not measured yet.
      */
-    public void turnOnRumble(long time) {
-        byte[] report = hexToByteArray("a210" + "01");
-        
-        try {
-            dataPipe.send(report);
-            if (time > 0){
-                Thread.sleep(time);
-                turnOfRumble();
-            }
-        } catch (IOException ex) {
-            Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
-        } catch (InterruptedException ex) {
-            Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
-        }
+    public double getReportRate() {
+        return rate.getRate();
     }
 
     /**
-     * Method for turn off the rumble feature.
+     * Observed jitter of the reports: the average variation of the interval
+     * between two reports.
+     *
+     * @return jitter in milliseconds, smoothed.
      */
-    public void turnOfRumble() {
-        byte[] report = hexToByteArray("a210" + "00");
-        
-        try {
-            dataPipe.send(report);
-        } catch (IOException ex) {
-            Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
-        }
+    public double getReportJitter() {
+        return rate.getJitter() / 1e6;
     }
 
     /**
-     * Method for turn on one of four leds.
+     * Time since the last report. With continuous reporting, a long time
+     * indicates a stalled link.
      *
-     * @param led led should be turned on. Options available: 1, 2, 3 ,4.
+     * @return milliseconds since the last report, or -1 if no report was
+     * received.
      */
-    private void turnOnLed(int led) {
-        System.out.println("Turning on led: " + led);
-        String op = "10";
-        switch (led) {
-            case 1: {
-                op = "10";
-                break;
+    public long getMillisSinceLastReport() {
+        long last = rate.getLast();
+        return rate.getCount() == 0 ? -1 : (System.nanoTime() - last) / 1_000_000;
+    }
+
+    /**
+     * Asks the wiimote for the calibration of the accelerometer, stored in its
+     * EEPROM. The answer arrives as a report and is interpreted by process.
+     */
+    private void readCalibration() {
+        System.out.println("Reading calibration...");
+        memory.read(MemoryEngine.EEPROM, Calibration.ADDRESS, Calibration.SIZE, true).whenComplete((data, ex) -> {
+            if (ex != null) {
+                if (!closing) {
+                    Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
+                }
+                return;
             }
-            case 2: {
-                op = "20";
-                break;
+            Calibration read = Calibration.parse(data, 0);
+            if (read != null) {
+                setCalibration(read);
+                if (address != null) {
+                    knownDevices.remember(address, read);
+                }
             }
-            case 3: {
-                op = "40";
-                break;
+        });
+    }
+
+    /**
+     * @return the mode requested by the client, changed to carry the IR data
+     * and the Nunchuk, if they are in use.
+     */
+    private ReportMode effectiveMode() {
+        ReportMode m = irEnabled ? mode.withIR() : mode;
+        return nunchukConnected ? m.withExtension() : m;
+    }
+
+    /**
+     * @return the format of the camera for the IR data of the mode.
+     */
+    private static int irFormat(ReportMode m) {
+        if (m == ReportMode.INTERLEAVED) {
+            return IR_FULL;
+        }
+        return m.irLength >= 12 ? IRPointer.EXTENDED : IRPointer.BASIC;
+    }
+
+    /**
+     * Turns on the IR camera with the sensitivity for the sensor bar and the
+     * format for the current mode.
+     */
+    private void enableCamera() throws IOException {
+        System.out.println("Turning on IR camera...");
+        int format = irFormat(effectiveMode());
+        output.send(new byte[]{(byte) 0xa2, 0x13, 0x04});
+        output.send(new byte[]{(byte) 0xa2, 0x1a, 0x04});
+        //the writes are sent at once; the wiimote applies them in order.
+        CompletableFuture.allOf(
+                writeRegister(IR_CONTROL, 0x08),
+                writeRegisters(IR_SENSITIVITY1, SENSITIVITY1),
+                writeRegisters(IR_SENSITIVITY2, SENSITIVITY2),
+                writeRegister(IR_FORMAT, format),
+                writeRegister(IR_CONTROL, 0x08)).whenComplete(this::logFailure);
+        pointer.reset();
+        irFormat = format;
+    }
+
+    /**
+     * Turns off the IR camera.
+     */
+    private void disableCamera() throws IOException {
+        System.out.println("Turning off IR camera...");
+        irFormat = 0;
+        output.send(new byte[]{(byte) 0xa2, 0x13, 0x00});
+        output.send(new byte[]{(byte) 0xa2, 0x1a, 0x00});
+    }
+
+    /**
+     * Turns the IR camera on or off. When on, the driver uses the closest
+     * report mode that carries the IR data (e.g. 0x33 instead of 0x31; the
+     * interleaved mode carries the full format of the camera) and
+     * tracks the sensor bar to compute the position of a pointer on the
+     * screen.
+     *
+     * @param enabled true to turn on.
+     * @return true if the change was sent (or will be, when connected). False
+     * otherwise.
+     * @see #setPointerListener
+     * @see #getPointer
+     */
+    public boolean setIRCamera(boolean enabled) {
+        irEnabled = enabled;
+        if (transport == null) {
+            return true;
+        }
+        try {
+            if (enabled) {
+                enableCamera();
+            } else {
+                disableCamera();
             }
-            case 4: {
-                op = "80";
+            setMode();
+            return true;
+        } catch (IOException ex) {
+            Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the IR camera is on (or will be, when connected).
+     */
+    public boolean isIRCamera() {
+        return irEnabled;
+    }
+
+    /**
+     * Sets a listener of the position of the pointer. The IR camera must be
+     * turned on.
+     *
+     * @param pointerListener the listener, or null.
+     * @see #setIRCamera
+     */
+    public void setPointerListener(PointerListener pointerListener) {
+        dispatcher.setPointerListener(pointerListener);
+    }
+
+    /**
+     * Copies the latest position of the pointer, for clients that poll (e.g.
+     * once per frame) instead of listening.
+     *
+     * @param position receives x and y, from 0 to 1 (see
+     * {@link PointerListener#pointer}).
+     * @return true if the sensor bar is in sight.
+     */
+    public boolean getPointer(double[] position) {
+        return pointer.getLatest(position);
+    }
+
+    /**
+     * Calibrates the pointer: sets the area seen by the camera that covers the
+     * screen. The coordinates are the position the pointer would have without
+     * calibration (0 to 1), e.g. read with {@link #getPointer} while aiming at
+     * the corners of the screen. By default, 0.1 to 0.9 in both axes.
+     *
+     * @param left position when aiming at the left edge.
+     * @param top position when aiming at the top edge.
+     * @param right position when aiming at the right edge.
+     * @param bottom position when aiming at the bottom edge.
+     */
+    public void setPointerArea(double left, double top, double right, double bottom) {
+        pointer.setArea(left, top, right, bottom);
+    }
+
+    /**
+     * Sets the smoothing of the pointer (alpha-beta filter). Lower values
+     * smooth more, but the pointer lags behind.
+     *
+     * @param alpha weight of each measure in the position, between 0 and 1.
+     * 0.5 by default.
+     * @param beta weight of each measure in the velocity, between 0 and 1. 0.1
+     * by default.
+     */
+    public void setPointerSmoothing(double alpha, double beta) {
+        pointer.setGains(alpha, beta);
+    }
+
+    /**
+     * Asks the wiimote for its status. The answer arrives as a report and is
+     * interpreted by process.
+     */
+    private void requestStatus() throws IOException {
+        byte[] report = {(byte) 0xa2, 0x15, 0x00};
+        output.send(report);
+    }
+
+    /**
+     * Writes one byte in a register of the wiimote (e.g. of the extension or of
+     * the IR camera).
+     *
+     * @param register address of the register (e.g. 0xa400f0).
+     * @param value the byte.
+     */
+    private CompletableFuture<Void> writeRegister(int register, int value) {
+        return writeRegisters(register, new byte[]{(byte) value});
+    }
+
+    /**
+     * Logs the failure of an asynchronous request, if it failed.
+     */
+    private void logFailure(Object result, Throwable ex) {
+        if (ex != null) {
+            Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Reads the EEPROM of the wiimote (e.g. the calibration at 0x0016). The
+     * request is sent at once, with the others in flight, and the answer is
+     * matched by its address. On errors, the request is sent again a few
+     * times before failing. While disconnected, it fails at once.
+     *
+     * @param address address of the first byte.
+     * @param size number of bytes (up to 65535).
+     * @return the data read.
+     */
+    public CompletableFuture<byte[]> readMemory(int address, int size) {
+        return memory.read(MemoryEngine.EEPROM, address, size, false);
+    }
+
+    /**
+     * Reads the registers of the wiimote (e.g. of the extension, at
+     * 0xa40000).
+     *
+     * @param address address of the first register.
+     * @param size number of bytes (up to 65535).
+     * @return the data read.
+     * @see #readMemory
+     */
+    public CompletableFuture<byte[]> readRegisters(int address, int size) {
+        return memory.read(MemoryEngine.REGISTERS, address, size, false);
+    }
+
+    /**
+     * Writes the EEPROM of the wiimote. Data longer than 16 bytes is written
+     * by several requests.
+     *
+     * @param address address of the first byte.
+     * @param data the bytes.
+     * @return completed when the wiimote acknowledged every byte.
+     */
+    public CompletableFuture<Void> writeMemory(int address, byte[] data) {
+        return memory.write(MemoryEngine.EEPROM, address, data.clone());
+    }
+
+    /**
+     * Writes the registers of the wiimote. Data longer than 16 bytes is written
+     * by several requests.
+     *
+     * @param address address of the first register.
+     * @param data the bytes.
+     * @return completed when the wiimote acknowledged every byte.
+     */
+    public CompletableFuture<Void> writeRegisters(int address, byte[] data) {
+        return memory.write(MemoryEngine.REGISTERS, address, data.clone());
+    }
+
+    /**
+     * Sets how many reads and writes of the memory can be sent before their
+     * answers arrive. More requests in flight make the connection faster.
+     *
+     * @param requests number of requests. 4 by default.
+     */
+    public void setMaxPendingRequests(int requests) {
+        memory.setMaxInFlight(requests);
+    }
+
+    /**
+     * Handles a control report, in the thread of the control channel.
+     */
+    private void controlReport(byte[] report, int length) {
+        switch (report[1] & 0xFF) {
+            case STATUS:
+                status(report, length);
                 break;
+            case READ_DATA:
+                memory.dataRead(report, length);
+                break;
+            default:
+                memory.acknowledged(report, length);
+        }
+    }
+
+    /**
+     * Interprets a status report, sent by the wiimote when asked or when an
+     * extension is plugged or unplugged. An extension just plugged is
+     * initialized (without encryption) and identified.
+     *
+     * The report has the buttons, the flags (bit 1: extension plugged), two
+     * unused bytes and the battery level.
+     */
+    private void status(byte[] report, int length) {
+        if (length < 5) {
+            return;
+        }
+        batteryLow = (report[4] & BATTERY_LOW) != 0;
+        if (length >= 8) {
+            battery = report[7] & 0xFF;
+        }
+        boolean plugged = (report[4] & EXTENSION_PLUGGED) != 0;
+        try {
+            if (plugged && !extensionPlugged) {
+                System.out.println("Extension plugged. Initializing...");
+                writeRegister(EXTENSION_INIT1, 0x55).whenComplete(this::logFailure);
+                writeRegister(EXTENSION_INIT2, 0x00).whenComplete(this::logFailure);
+                readRegisters(EXTENSION_ID, Nunchuk.ID.length).whenComplete((id, ex) -> {
+                    if (ex != null) {
+                        System.out.println("Extension could not be identified: " + ex.getMessage());
+                    } else {
+                        extensionIdentified(id);
+                    }
+                });
+            } else if (!plugged && nunchukConnected) {
+                System.out.println("Nunchuk unplugged.");
+                nunchukConnected = false;
+                dispatcher.nunchuk(EventDispatcher.NUNCHUK_DISCONNECTED);
             }
+            extensionPlugged = plugged;
+            //after a status report, the wiimote only sends data again when the mode is set.
+            setMode();
+        } catch (IOException ex) {
+            Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * The identifier of the extension was read: starts using the Nunchuk.
+     */
+    private void extensionIdentified(byte[] id) {
+        if (!Nunchuk.isNunchuk(id, 0)) {
+            System.out.println("Unsupported extension: " + Util.byteArrayToHex(id));
+            return;
         }
+        System.out.println("Nunchuk connected.");
+        nunchuk.reset();
+        nunchukConnected = true;
+        dispatcher.nunchuk(EventDispatcher.NUNCHUK_CONNECTED);
+        try {
+            setMode();
+        } catch (IOException ex) {
+            Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
 
-        byte[] report = hexToByteArray("a211" + op);
+    /**
+     * Sets a listener of the Nunchuk. When a Nunchuk is plugged, the driver
+     * initializes it and switches to the closest report mode that carries the
+     * extension (e.g. 0x35 instead of 0x31); when it is unplugged, the
+     * requested mode is used again.
+     *
+     * @param nunchukListener the listener, or null.
+     */
+    public void setNunchukListener(NunchukListener nunchukListener) {
+        dispatcher.setNunchukListener(nunchukListener);
+    }
+
+    /**
+     * Asks the wiimote for its status, to update the battery level. The answer
+     * arrives asynchronously.
+     *
+     * @return true if the request was sent. False otherwise.
+     */
+    public boolean updateStatus() {
         try {
-            dataPipe.send(report);
+            requestStatus();
+            return true;
         } catch (IOException ex) {
             Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
         }
     }
 
+    /**
+     * Battery level of the last status report. The wiimote reports its status
+     * when connected, when an extension is plugged or unplugged, and when
+     * asked (see {@link #updateStatus}).
+     *
+     * @return from 0 (empty) to 1 (full), or -1 if not reported yet.
+     */
+    public double getBatteryLevel() {
+        int b = battery;
+        return b < 0 ? -1 : Math.min(1.0, b / BATTERY_FULL);
+    }
+
+    /**
+     * @return true if the last status report said the battery is nearly
+     * empty.
+     */
+    public boolean isBatteryLow() {
+        return batteryLow;
+    }
+
+    /**
+     * @return true while an extension is plugged into the wiimote, according
+     * to the last status report.
+     */
+    public boolean isExtensionPlugged() {
+        return extensionPlugged;
+    }
+
+    /**
+     * @return true while a Nunchuk is plugged into the wiimote.
+     */
+    public boolean isNunchukConnected() {
+        return nunchukConnected;
+    }
+
+    /**
+     * Starts using a calibration: the boundaries become the values of the
+     * axes without acceleration.
+     */
+    private void setCalibration(Calibration calibration) {
+        xBoundary = AccelerometerSample.NORMALIZED[calibration.zeroX];
+        yBoundary = AccelerometerSample.NORMALIZED[calibration.zeroY];
+        zBoundary = AccelerometerSample.NORMALIZED[calibration.zeroZ];
+        this.calibration = calibration;
+        if (dispatcher.hasOrientationListener()) {
+            tilt = new TiltTables(calibration);
+        }
+    }
+
+    /**
+     * Sets a listener that receives the tilt (pitch and roll) of the wiimote
+     * for every report with a new value of the accelerometer. The tilt is
+     * computed from tables built once for the calibration of the wiimote, so
+     * it costs a few array loads per report and is the same in every
+     * application. Until the calibration is read, a typical calibration is
+     * used.
+     *
+     * @param orientationListener the listener, or null to stop computing the
+     * tilt.
+     */
+    public void setOrientationListener(OrientationListener orientationListener) {
+        if (orientationListener == null) {
+            tilt = null;
+        } else if (tilt == null) {
+            tilt = new TiltTables(calibration);
+        }
+        dispatcher.setOrientationListener(orientationListener);
+    }
+
+
+    /**
+     * Changes the data reporting mode of the wiimote. Can be called before
+     * connecting or at any time while connected, also while listening.
+     *
+     * @param mode the new mode.
+     * @return true if the mode was changed (or will be, when connected). False
+     * otherwise.
+     */
+    public boolean setReportMode(ReportMode mode) {
+        this.mode = mode;
+        if (transport == null) {
+            return true;
+        }
+        try {
+            setMode();
+            return true;
+        } catch (IOException ex) {
+            Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+    }
+
+    /**
+     * @return the data reporting mode of the wiimote.
+     */
+    public ReportMode getReportMode() {
+        return mode;
+    }
+
+    /**
+     * Method for turn on the rumble feature. Does not wait: the rumble is
+     * turned off later by the driver.
+     * 
+     * @param time indicates time in milliseconds to turn off rumble. 
+     * If the value is 0, rumble will not turned off automatically. 
+     */
+    public void turnOnRumble(long time) {
+        if (time > 0) {
+            output.rumblePattern(time);
+        } else {
+            output.setRumble(true);
+        }
+    }
+
+    /**
+     * Method for turn off the rumble feature.
+     */
+    public void turnOfRumble() {
+        output.setRumble(false);
+    }
+
+    /**
+     * Plays a rumble pattern without waiting. The rumble is turned on during
+     * the first duration, off during the second one, on during the third one
+     * and so on, and off at the end. A new pattern (or turning the rumble on or
+     * off) cancels the pattern in progress.
+     *
+     * @param durations durations in milliseconds.
+     */
+    public void rumblePattern(long... durations) {
+        output.rumblePattern(durations);
+    }
+
+    /**
+     * Turns on and off the four leds. Does not wait: the change is sent by the
+     * driver.
+     *
+     * @param led1 true to turn on the led 1.
+     * @param led2 true to turn on the led 2.
+     * @param led3 true to turn on the led 3.
+     * @param led4 true to turn on the led 4.
+     */
+    public void setLeds(boolean led1, boolean led2, boolean led3, boolean led4) {
+        output.setLeds((led1 ? 0x10 : 0) | (led2 ? 0x20 : 0) | (led3 ? 0x40 : 0) | (led4 ? 0x80 : 0));
+    }
+
+    /**
+     * Changes the minimal interval between two reports of leds and rumble. The
+     * changes made in the interval are sent together in one report.
+     *
+     * @param interval minimal interval in milliseconds. The default is 10.
+     */
+    public void setOutputInterval(long interval) {
+        output.setMinInterval(interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Method for turn on one of four leds.
+     *
+     * @param led led should be turned on. Options available: 1, 2, 3 ,4.
+     */
+    private void turnOnLed(int led) {
+        System.out.println("Turning on led: " + led);
+        output.setLeds(0x10 << (led - 1));
+    }
+
     /**
      * Method for listening data from wiimote.
      *
      * This method can only be called if the connection is performed.
      * 
      * The listener will be notified according to the data received and
-     * interpreted.
+     * interpreted. The notifications come from a dedicated thread, not from
+     * the thread that called this method.
      *
      */
     public void listen() {
-        int cont = 0;
+        byte[] report = new byte[ReportMode.MAX_REPORT_SIZE];//big enough for every report of the wiimote.
+        Transport link = transport;
+        dispatcher.start();
+        System.out.println("Receiving...");
+        while (link != null) {
+            try {
+                while (true) {
+                    int length = link.receive(report);
+                    long now = System.nanoTime();
+                    if (length > 1 && (report[1] & 0xF0) == 0x30) {
+                        //only the data reports (0x30 to 0x3f) have a cadence.
+                        rate.arrived(now);
+                    }
+                    ReportRecorder r = recorder;
+                    if (r != null) {
+                        r.record(report, length, now);
+                    }
+                    process(report, length, now);
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            buttons.releaseAll();
+            link = reconnect();
+        }
+        dispatcher.stop();
+    }
 
-        double lastValueOfX = 0.0; //will store the last value of wiimote in x axis. 
-        double lastValueOfY = 0.0; //will store the value of wiimote in y axis.
-        double lastValueOfZ = 0.0; //will store the value of wiimote in z axis.
+    /**
+     * Connects again to the wiimote after the connection is lost, if the
+     * automatic reconnection is enabled. Tries until it succeeds or the client
+     * disconnects.
+     *
+     * @return the new link, or null if the driver should stop listening.
+     */
+    private Transport reconnect() {
+        while (autoReconnect && !closing && address != null) {
+            System.out.println("Reconnecting to Wii Remote: " + address);
+            try {
+                Transport link = L2CAPTransport.open(address);
+                if (connect(link)) {
+                    metrics.reconnects.increment();
+                    return link;
+                }
+            } catch (IOException ex) {
+                System.out.println("Wii Remote not available: " + address);
+            }
+            try {
+                Thread.sleep(RECONNECT_DELAY);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return null;
+    }
 
-        byte[] report = new byte[7];//expecting 7 bytes from wiimote. setMode method should be called first. 
+    /**
+     * Starts recording every report received from the wiimote in a capture
+     * file. The file is written by a background thread, so the recording does
+     * not delay the receiving of data. If a recording is in progress, it is
+     * stopped first.
+     *
+     * @param path the capture file. Replaced if it exists.
+     * @return true if the recording was started. False otherwise.
+     */
+    public boolean startRecording(Path path) {
+        stopRecording();
         try {
-            System.out.println("Receiving...");
-            while (true) {
-                dataPipe.receive(report);
-
-                //Discovering the value for wiimote without movement.
-                if (cont < 10) {
-                    xBoundary = report[4] < 0 ? 256 + report[4] : report[4];
-                    yBoundary = report[5] < 0 ? 256 + report[5] : report[5];
-                    zBoundary = report[6] < 0 ? 256 + report[6] : report[6];
-
-                    xBoundary = xBoundary / 256;
-                    yBoundary = yBoundary / 256;
-                    zBoundary = zBoundary / 256;
-                    cont++;
-                    continue;
-                }
+            recorder = ReportRecorder.start(path);
+            return true;
+        } catch (IOException ex) {
+            Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+    }
 
-                int value = report[2];
-                Button b1 = buttonsByte1.get(value); //if one button of the first byte was fired (LEFT, RIGHT, DOWN, UP OR PLUS), the library client will be notified. 
-                if (b1 != null) {
-                    b1.fire();
-                }
-                value = report[3];
-                Button b2 = buttonsByte2.get(value); //if one button of the second byte was fired (TWO, ONE, B, A OR MINUS), the library client will be notified.
-                if (b2 != null) {
-                    b2.fire();
-                }
+    /**
+     * Stops the recording, writing the pending reports to the capture file.
+     *
+     * @return number of reports that could not be recorded because the disk
+     * was slower than the wiimote.
+     */
+    public long stopRecording() {
+        ReportRecorder r = recorder;
+        recorder = null;
+        if (r == null) {
+            return 0;
+        }
+        r.stop();
+        return r.getDropped();
+    }
 
-                //Converting data from accelerometer: signed to unsigned.
-                double x, y, z;
-
-                x = report[4] < 0 ? 256 + report[4] : report[4];
-                y = report[5] < 0 ? 256 + report[5] : report[5];
-                z = report[6] < 0 ? 256 + report[6] : report[6];
-
-                x = x / 256;
-                y = y / 256;
-                z = z / 256;
-
-                //if the value is according to the setted sensitivity, then the client of the library will be notified. 
-                if (sensitivity == WiiMoteListener.SENSITIVITY_OFF) {
-                    listener.accelerometerValues(x, y, z, xBoundary, yBoundary, zBoundary);
-                } else {
-                    if ((x > (lastValueOfX * (1.0 + sensitivity)) || x < (lastValueOfX * (1.0 - sensitivity)))
-                            && (y > (lastValueOfY * (1.0 + sensitivity)) || y < (lastValueOfY * (1.0 - sensitivity)))
-                            && (z > (lastValueOfZ * (1.0 + sensitivity)) || z < (lastValueOfZ * (1.0 - sensitivity)))) {
-                        listener.accelerometerValues(x, y, z,xBoundary, yBoundary, zBoundary);
-                    }
-                }
-                lastValueOfX = x;
-                lastValueOfY = y;
-                lastValueOfZ = z;
-            }
+    /**
+     * Feeds the reports of a capture file to the driver, as if they were
+     * received from the wiimote. The listener is notified exactly as in the
+     * method listen. Does not need a wiimote or a connection.
+     *
+     * @param path the capture file, written by startRecording.
+     * @param realTime if true, the reports are fed with the same intervals of
+     * the recording. Otherwise as fast as possible.
+     * @return number of reports fed, or -1 if the file could not be read.
+     */
+    public long replay(Path path, boolean realTime) {
+        dispatcher.start();
+        long count = -1;
+        try {
+            count = ReportReplay.replay(path, this, realTime);
         } catch (IOException ex) {
             Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
         }
+        buttons.releaseAll();
+        dispatcher.stop();
+        return count;
+    }
+
+    /**
+     * Interprets one report received from the wiimote and queues the events
+     * for the listener. Does not create any object.
+     *
+     * @param report the report, as received from the wiimote.
+     */
+    void process(byte[] report) {
+        process(report, report.length);
+    }
+
+    /**
+     * Interprets one report received from the wiimote, in place, according to
+     * the table of report modes, and queues the events for the listener. Does
+     * not create any object. Reports that are not data reports, or that are
+     * shorter than their mode requires, are ignored.
+     *
+     * @param report the report, as received from the wiimote.
+     * @param length size of the report.
+     */
+    void process(byte[] report, int length) {
+        process(report, length, System.nanoTime());
+    }
+
+    /**
+     * Interprets one report and records the time spent.
+     *
+     * @param report the report, as received from the wiimote.
+     * @param length size of the report.
+     * @param received time of arrival of the report, from System.nanoTime().
+     */
+    private void process(byte[] report, int length, long received) {
+        dispatcher.received(received);
+        long start = System.nanoTime();
+        decode(report, length, received);
+        metrics.decode.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Interprets one report, in place, according to the table of report modes.
+     */
+    private void decode(byte[] report, int length, long received) {
+        if (length < 2) {
+            return;
+        }
+        ReportMode mode = ReportMode.forId(report[1]);
+        if (mode == null) {
+            int id = report[1] & 0xFF;
+            if ((id == STATUS || id == READ_DATA || id == ACKNOWLEDGE) && length >= 4) {
+                //the control reports also carry the buttons, which are interpreted here to keep their order.
+                buttons.update(report[2], report[3]);
+                controlChannel.offer(report, length);
+            }
+            return;
+        }
+        if (length < mode.getSize()) {
+            return;
+        }
+
+        if (mode.buttons >= 0) {
+            //every button of both bytes (LEFT, RIGHT, DOWN, UP, PLUS, TWO, ONE, B, A, MINUS) that changed since the last report will be notified.
+            buttons.update(report[mode.buttons], report[mode.buttons + 1]);
+        }
+
+        if (mode == ReportMode.INTERLEAVED) {
+            //each report carries one axis. The z axis is split in the unused bits of the buttons (bits 5 and 6).
+            int zBits = ((report[2] & 0x60) >> 5) | ((report[3] & 0x60) >> 3);
+            boolean second = (report[1] & 0xFF) == ReportMode.INTERLEAVED_SECOND;
+            if (!second) {
+                interleavedX = report[4];
+                interleavedZ = zBits << 4;
+            } else {
+                sample.set(interleavedX, report[4], (byte) (interleavedZ | zBits));
+                accelerometer();
+            }
+            //each report also carries two spots of the camera, in the full format.
+            if (irFormat != 0) {
+                pointer.decodeFull(report, mode.ir, second, received);
+            }
+            return;
+        }
+
+        if (mode.accelerometer >= 0) {
+            int a = mode.accelerometer;
+            //the unused bits of the buttons carry the least significant bits of the accelerometer.
+            sample.set(report[a], report[a + 1], report[a + 2], report[2], report[3]);
+            accelerometer();
+        }
+
+        if (nunchukConnected && mode.extensionLength >= Nunchuk.SIZE) {
+            nunchuk.decode(report, mode.extension);
+        }
+
+        if (irFormat != 0 && mode.ir >= 0) {
+            pointer.decode(report, mode.ir, mode.irLength, received);
+        }
+    }
+
+    /**
+     * Queues the values of the accelerometer in the sample for the listener,
+     * according to the sensitivity.
+     */
+    private void accelerometer() {
+        TiltTables t = tilt;
+        if (t != null && (sample.rawX != last.rawX || sample.rawY != last.rawY || sample.rawZ != last.rawZ)) {
+            dispatcher.orientation(t.pitch(sample.rawY), t.roll(sample.rawX, sample.rawZ));
+        }
+
+        AccelerometerFilter[] stages = filters;
+        if (stages != null) {
+            filter(stages);
+            last.copy(sample);
+            return;
+        }
+
+        double x = sample.x;
+        double y = sample.y;
+        double z = sample.z;
+
+        //if the value is according to the setted sensitivity, then the client of the library will be notified. 
+        if (sensitivity == WiiMoteListener.SENSITIVITY_OFF) {
+            dispatcher.accelerometer(x, y, z, xBoundary, yBoundary, zBoundary);
+        } else {
+            if ((x > (last.x * (1.0 + sensitivity)) || x < (last.x * (1.0 - sensitivity)))
+                    && (y > (last.y * (1.0 + sensitivity)) || y < (last.y * (1.0 - sensitivity)))
+                    && (z > (last.z * (1.0 + sensitivity)) || z < (last.z * (1.0 - sensitivity)))) {
+                dispatcher.accelerometer(x, y, z, xBoundary, yBoundary, zBoundary);
+            }
+        }
+        last.copy(sample);
+    }
+
+    /**
+     * Passes the sample through the stages of the pipeline, in order, and
+     * queues the result for the listener if no stage discarded it.
+     */
+    private void filter(AccelerometerFilter[] stages) {
+        //nothing to do if the raw values did not change (e.g. continuous reporting of a wiimote at rest),
+        //unless a stage has to see every sample (e.g. a low-pass that must reach the resting value).
+        if (sample.rawX == last.rawX && sample.rawY == last.rawY && sample.rawZ == last.rawZ && idempotent(stages)) {
+            return;
+        }
+        filterValues[0] = sample.x;
+        filterValues[1] = sample.y;
+        filterValues[2] = sample.z;
+        filterBoundaries[0] = xBoundary;
+        filterBoundaries[1] = yBoundary;
+        filterBoundaries[2] = zBoundary;
+        for (AccelerometerFilter stage : stages) {
+            if (!stage.filter(filterValues, filterBoundaries)) {
+                return;
+            }
+        }
+        dispatcher.accelerometer(filterValues[0], filterValues[1], filterValues[2], xBoundary, yBoundary, zBoundary);
+    }
+
+    /**
+     * @return true if every stage can skip a sample equal to the previous one.
+     */
+    private static boolean idempotent(AccelerometerFilter[] stages) {
+        for (AccelerometerFilter stage : stages) {
+            if (!stage.isIdempotent()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets the pipeline that filters the accelerometer, replacing the
+     * sensitivity given in the constructor. The samples pass through the
+     * stages in the given order; the listener is notified only with the
+     * samples that pass every stage. Samples whose raw values did not change
+     * since the previous report are discarded before the pipeline, if every
+     * stage is idempotent (see {@link AccelerometerFilter#isIdempotent}).
+     *
+     * @param stages the stages, created by {@link AccelerometerFilters}. If
+     * none, the sensitivity is used again.
+     * @see AccelerometerFilters
+     */
+    public void setFilters(AccelerometerFilter... stages) {
+        if (stages == null || stages.length == 0) {
+            filters = null;
+            return;
+        }
+        AccelerometerFilter[] copy = stages.clone();
+        for (AccelerometerFilter stage : copy) {
+            stage.reset();
+        }
+        filters = copy;
+    }
+
+    /**
+     * @return number of events discarded because the queue of events was
+     * full.
+     */
+    public long getDroppedEvents() {
+        return dispatcher.getDropped();
+    }
+
+    /**
+     * Subscribes a listener to the buttons, with a queue of
+     * {@link Subscription#DEFAULT_CAPACITY} events.
+     *
+     * @param buttonListener the listener.
+     * @return the subscription, to cancel it.
+     * @see #subscribe(ButtonListener, int)
+     */
+    public Subscription subscribe(ButtonListener buttonListener) {
+        return subscribe(buttonListener, Subscription.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Subscribes a listener to the buttons. Each subscriber is notified by its
+     * own thread, from its own queue, so a slow subscriber does not delay the
+     * listener, the other subscribers or the wiimote: when its queue is full,
+     * its new events are discarded.
+     *
+     * @param buttonListener the listener.
+     * @param capacity maximum number of events waiting for the listener.
+     * @return the subscription, to cancel it.
+     */
+    public Subscription subscribe(ButtonListener buttonListener, int capacity) {
+        Subscription subscription = new Subscription(bus, buttonListener, null, capacity);
+        bus.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Subscribes a listener to the accelerometer, with a queue of
+     * {@link Subscription#DEFAULT_CAPACITY} events.
+     *
+     * @param accelerometerListener the listener.
+     * @return the subscription, to cancel it.
+     * @see #subscribe(AccelerometerListener, int)
+     */
+    public Subscription subscribe(AccelerometerListener accelerometerListener) {
+        return subscribe(accelerometerListener, Subscription.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Subscribes a listener to the accelerometer. The values are the same
+     * notified to the listener, after the sensitivity or the filters. Each
+     * subscriber is notified by its own thread, from its own queue, so a slow
+     * subscriber does not delay the listener, the other subscribers or the
+     * wiimote: when its queue is full, its new events are discarded.
+     *
+     * @param accelerometerListener the listener.
+     * @param capacity maximum number of events waiting for the listener.
+     * @return the subscription, to cancel it.
+     */
+    public Subscription subscribe(AccelerometerListener accelerometerListener, int capacity) {
+        Subscription subscription = new Subscription(bus, null, accelerometerListener, capacity);
+        bus.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Subscribes listeners to the buttons and to the accelerometer through
+     * one queue and one thread, so they are notified in the same order the
+     * events happened (e.g. a press before the samples that came after it).
+     * When the queue is full, the new events are discarded.
+     *
+     * @param buttonListener the listener of the buttons.
+     * @param accelerometerListener the listener of the accelerometer.
+     * @param capacity maximum number of events waiting for the listeners.
+     * @return the subscription, to cancel it.
+     */
+    public Subscription subscribe(ButtonListener buttonListener, AccelerometerListener accelerometerListener, int capacity) {
+        if (buttonListener == null || accelerometerListener == null) {
+            throw new IllegalArgumentException("listener is null");
+        }
+        Subscription subscription = new Subscription(bus, buttonListener, accelerometerListener, capacity);
+        bus.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Creates a reactive publisher of the buttons. The events are delivered
+     * from the common fork/join pool.
+     *
+     * @param strategy what to do when a subscriber does not request fast
+     * enough.
+     * @param capacity maximum number of events waiting for each subscriber
+     * (e.g. Flow.defaultBufferSize()).
+     * @return the publisher. Close it when it is not needed anymore.
+     * @see #buttonEvents(BackpressureStrategy, int, Executor)
+     */
+    public EventPublisher<ButtonEvent> buttonEvents(BackpressureStrategy strategy, int capacity) {
+        return buttonEvents(strategy, capacity, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a reactive publisher of the buttons. Each subscriber receives
+     * the events as it requests them; the thread receiving data from the
+     * wiimote never waits for a subscriber.
+     *
+     * @param strategy what to do when a subscriber does not request fast
+     * enough.
+     * @param capacity maximum number of events waiting for each subscriber.
+     * @param executor runs the delivery to the subscribers.
+     * @return the publisher. Close it when it is not needed anymore.
+     */
+    public EventPublisher<ButtonEvent> buttonEvents(BackpressureStrategy strategy, int capacity, Executor executor) {
+        return bus.buttonPublisher(strategy, capacity, executor);
+    }
+
+    /**
+     * Creates a reactive publisher of the accelerometer. The samples are
+     * delivered from the common fork/join pool.
+     *
+     * @param strategy what to do when a subscriber does not request fast
+     * enough.
+     * @param capacity maximum number of samples waiting for each subscriber
+     * (e.g. Flow.defaultBufferSize()).
+     * @return the publisher. Close it when it is not needed anymore.
+     * @see #motionSamples(BackpressureStrategy, int, Executor)
+     */
+    public EventPublisher<MotionSample> motionSamples(BackpressureStrategy strategy, int capacity) {
+        return motionSamples(strategy, capacity, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a reactive publisher of the accelerometer. The samples are the
+     * same notified to the listener, after the sensitivity or the filters.
+     * Each subscriber receives the samples as it requests them; the thread
+     * receiving data from the wiimote never waits for a subscriber.
+     *
+     * @param strategy what to do when a subscriber does not request fast
+     * enough.
+     * @param capacity maximum number of samples waiting for each subscriber.
+     * @param executor runs the delivery to the subscribers.
+     * @return the publisher. Close it when it is not needed anymore.
+     */
+    public EventPublisher<MotionSample> motionSamples(BackpressureStrategy strategy, int capacity, Executor executor) {
+        return bus.motionPublisher(strategy, capacity, executor);
+    }
+
+    /**
+     * @return the counters and histograms of the driver: reports received,
+     * their cadence, the time to interpret them, the latency until the
+     * listener is notified, the events dropped, the output reports and the
+     * reconnections.
+     */
+    public WiiMoteMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Registers the metrics of the driver in the platform MBean server, named
+     * "mywiimote:type=WiiMote,player=N,address=A", so they can be watched with
+     * JConsole or VisualVM. A is the Bluetooth address of the wiimote, or
+     * "driverK" (K being the number of the driver) if not connected through
+     * Bluetooth.
+     *
+     * @return true if registered, false otherwise.
+     */
+    public synchronized boolean registerMetrics() {
+        if (metricsName != null) {
+            return true;
+        }
+        try {
+            String a = address;
+            ObjectName name = new ObjectName("mywiimote:type=WiiMote,player=" + player
+                    + ",address=" + (a != null ? a : "driver" + number));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            metricsName = name;
+            return true;
+        } catch (JMException ex) {
+            Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return false;
+    }
+
+    /**
+     * Removes the metrics of the driver from the platform MBean server.
+     */
+    public synchronized void unregisterMetrics() {
+        if (metricsName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+        } catch (JMException ex) {
+            Logger.getLogger(WiiMoteDriver.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        metricsName = null;
+    }
+
+    /**
+     * Sets a listener that receives the samples of the accelerometer in
+     * batches, instead of one sample per call of
+     * {@link WiiMoteListener#accelerometerValues}. A batch is delivered when
+     * it is full, when the oldest sample waited the maximum delay, or before a
+     * button event (so the order of the events is kept).
+     *
+     * @param batchListener the listener, or null to deliver the samples to the
+     * WiiMoteListener again.
+     * @param batchSize number of samples of a full batch.
+     * @param maxDelay maximum time, in milliseconds, that a sample waits for
+     * its batch to be delivered.
+     */
+    public void setBatchListener(AccelerometerBatchListener batchListener, int batchSize, long maxDelay) {
+        dispatcher.setBatch(batchListener == null ? null : new AccelerometerBatch(batchListener, batchSize, TimeUnit.MILLISECONDS.toNanos(maxDelay)));
+    }
+
+    EventDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Sets the wiimote that this driver connects to, when it was found by
+     * another discovery (e.g. by the WiiMoteManager).
+     *
+     * @param device the wiimote.
+     */
+    void setDevice(RemoteDevice device) {
+        control = device;
+        address = device.getBluetoothAddress();
+    }
+
+    /**
+     * @return bluetooth address of the wiimote, or null if no wiimote was
+     * found.
+     */
+    public String getBluetoothAddress() {
+        return address;
+    }
+
+    /**
+     * Enables or disables the automatic reconnection. When enabled, if the
+     * connection with the wiimote is lost while listening, the driver connects
+     * again directly to the same wiimote (without inquiry) and keeps
+     * listening. Pressed buttons are released when the connection is lost.
+     *
+     * @param autoReconnect true to enable. Disabled by default.
+     */
+    public void setAutoReconnect(boolean autoReconnect) {
+        this.autoReconnect = autoReconnect;
+    }
+
+    /**
+     * Changes the cache of the wiimotes already connected. By default the
+     * cache is ~/.mywiimote/devices.
+     *
+     * @param file the cache file.
+     */
+    public void setKnownDevicesFile(Path file) {
+        knownDevices = KnownDevices.of(file);
+    }
+
+    /**
+     * @return number of the player (1 to 4). The led of this number is turned
+     * on when connected.
+     */
+    public int getPlayer() {
+        return player;
+    }
+
+    /**
+     * Sets the number of the player. Should be called before connecting.
+     *
+     * @param player number of the player: 1, 2, 3 or 4.
+     */
+    public void setPlayer(int player) {
+        if (player < 1 || player > 4) {
+            throw new IllegalArgumentException("player must be between 1 and 4: " + player);
+        }
+        this.player = player;
     }
 
     public double getxBoundary() {
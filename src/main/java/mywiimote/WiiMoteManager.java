@@ -0,0 +1,220 @@
+package mywiimote;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.bluetooth.BluetoothStateException;
+import javax.bluetooth.DeviceClass;
+import javax.bluetooth.DiscoveryAgent;
+import javax.bluetooth.DiscoveryListener;
+import javax.bluetooth.LocalDevice;
+import javax.bluetooth.RemoteDevice;
+import javax.bluetooth.ServiceRecord;
+
+/**
+ * Class for library clients that use more than one wiimote (up to four).
+ *
+ * The manager finds every wiimote in range, connects each one to its own
+ * {@link WiiMoteDriver} and turns on the led of the player (1 to 4). Each
+ * wiimote is listened by its own thread and its events are delivered by the
+ * dispatcher of its own driver, so a wiimote does not delay the others.
+ *
+ * The events are delivered to the listener created for the player, so the
+ * client always knows which wiimote the event came from.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+public class WiiMoteManager implements DiscoveryListener {
+
+    /**
+     * Maximum number of wiimotes. One per led.
+     */
+    public static final int MAX_WIIMOTES = 4;
+
+    /**
+     * Creates the listener of each player. Receives the number of the player
+     * (1 to 4).
+     */
+    private final IntFunction<WiiMoteListener> listeners;
+
+    /**
+     * Indicates the sensitivity of the accelerometer of every wiimote.
+     */
+    private final double sensitivity;
+
+    /**
+     * The wiimotes found by the inquiry.
+     */
+    private final List<RemoteDevice> devices = new ArrayList<>();
+
+    /**
+     * The drivers of the connected wiimotes, in order of player.
+     */
+    private final List<WiiMoteDriver> drivers = new ArrayList<>();
+
+    /**
+     * Controls the thread of inquiring process.
+     */
+    private final Object inquiryCompletedEvent = new Object();
+
+    private boolean inquiryCompleted = false;
+
+    /**
+     * Default constructor.
+     *
+     * @param listeners creates the listener of each player, given the number
+     * of the player (1 to 4).
+     * @param sensitivity sensitivity of the accelerometer.
+     */
+    public WiiMoteManager(IntFunction<WiiMoteListener> listeners, double sensitivity) {
+        System.setProperty("bluecove.jsr82.psm_minimum_off", "true");
+        this.listeners = listeners;
+        this.sensitivity = sensitivity;
+    }
+
+    /**
+     * Method to find every wiimote in range. Waits for one inquiry to
+     * complete.
+     *
+     * @return number of wiimotes found (at most four).
+     */
+    public int discover() {
+        synchronized (inquiryCompletedEvent) {
+            try {
+                inquiryCompleted = false;
+                DiscoveryAgent agent = LocalDevice.getLocalDevice().getDiscoveryAgent();
+                if (agent.startInquiry(DiscoveryAgent.GIAC, this)) {
+                    System.out.println("wait for device inquiry to complete...");
+                    while (!inquiryCompleted) {
+                        inquiryCompletedEvent.wait();
+                    }
+                }
+            } catch (BluetoothStateException ex) {
+                Logger.getLogger(WiiMoteManager.class.getName()).log(Level.SEVERE, null, ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                Logger.getLogger(WiiMoteManager.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        synchronized (devices) {
+            return devices.size();
+        }
+    }
+
+    /**
+     * Connects every wiimote found. The first one is the player 1, the second
+     * one is the player 2 and so on.
+     *
+     * @return number of wiimotes connected.
+     */
+    public int connect() {
+        List<RemoteDevice> found;
+        synchronized (devices) {
+            found = new ArrayList<>(devices);
+        }
+        for (RemoteDevice device : found) {
+            int player = drivers.size() + 1;
+            WiiMoteDriver driver = new WiiMoteDriver(listeners.apply(player), sensitivity);
+            driver.setDevice(device);
+            driver.setPlayer(player);
+            if (driver.connect()) {
+                drivers.add(driver);
+            }
+        }
+        return drivers.size();
+    }
+
+    /**
+     * Listens every connected wiimote, each one in its own thread. Returns
+     * when every wiimote is disconnected.
+     */
+    public void listen() {
+        List<Thread> threads = new ArrayList<>();
+        for (WiiMoteDriver driver : drivers) {
+            Thread thread = new Thread(driver::listen, "mywiimote-player-" + driver.getPlayer());
+            thread.start();
+            threads.add(thread);
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            Logger.getLogger(WiiMoteManager.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Disconnects every wiimote.
+     */
+    public void disconnect() {
+        for (WiiMoteDriver driver : drivers) {
+            driver.disconnect();
+        }
+        drivers.clear();
+    }
+
+    /**
+     * @return the drivers of the connected wiimotes, in order of player.
+     */
+    public List<WiiMoteDriver> getDrivers() {
+        return Collections.unmodifiableList(drivers);
+    }
+
+    /**
+     * Keeps the bluetooth device discovered if it is a wiimote.
+     *
+     * @param btDevice bluetooth device discovered.
+     * @param cod class of bluetooth device.
+     */
+    @Override
+    public void deviceDiscovered(RemoteDevice btDevice, DeviceClass cod) {
+        try {
+            if (Model.isValid(btDevice.getFriendlyName(false))) {
+                synchronized (devices) {
+                    if (devices.size() < MAX_WIIMOTES && !devices.contains(btDevice)) {
+                        devices.add(btDevice);
+                        System.out.println("Wii Remote found: " + btDevice.getBluetoothAddress());
+                    }
+                }
+            } else {
+                System.out.println("Discarting: " + btDevice.getFriendlyName(false));
+            }
+        } catch (IOException ex) {
+            System.out.println("Discarting unknown device...");
+        }
+    }
+
+    /**
+     * Just informs if the inquiring process is completed.
+     */
+    @Override
+    public void inquiryCompleted(int discType) {
+        System.out.println("Device Inquiry completed!");
+        synchronized (inquiryCompletedEvent) {
+            inquiryCompleted = true;
+            inquiryCompletedEvent.notifyAll();
+        }
+    }
+
+    /**
+     * Not implemented.
+     */
+    @Override
+    public void serviceSearchCompleted(int transID, int respCode) {
+        //Nothing to do so far.
+    }
+
+    /**
+     * Not implemented.
+     */
+    @Override
+    public void servicesDiscovered(int transID, ServiceRecord[] servRecord) {
+        //Nothing to do so far.
+    }
+}
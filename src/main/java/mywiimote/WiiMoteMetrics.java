@@ -0,0 +1,128 @@
+package mywiimote;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms of one driver. They are always recorded: the cost
+ * is a few atomic increments per report, without locks or objects created.
+ * The values can be read at any time from any thread, directly or through JMX.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ * @see WiiMoteDriver#getMetrics
+ */
+public class WiiMoteMetrics implements WiiMoteMetricsMBean {
+
+    /**
+     * Time to interpret each report.
+     */
+    final LatencyHistogram decode = new LatencyHistogram();
+
+    /**
+     * Time from the arrival of a report until the listener returns.
+     */
+    final LatencyHistogram latency;
+
+    final LongAdder reconnects = new LongAdder();
+
+    private final ReportRate rate;
+    private final EventDispatcher dispatcher;
+    private final OutputScheduler output;
+
+    /**
+     * Values of the counters of the dispatcher and of the scheduler at the
+     * last reset.
+     */
+    private volatile long droppedBase = 0;
+    private volatile long coalescedBase = 0;
+    private volatile long sentBase = 0;
+
+    WiiMoteMetrics(ReportRate rate, EventDispatcher dispatcher, OutputScheduler output, LatencyHistogram latency) {
+        this.rate = rate;
+        this.dispatcher = dispatcher;
+        this.output = output;
+        this.latency = latency;
+    }
+
+    @Override
+    public long getReportsReceived() {
+        return decode.getCount();
+    }
+
+    @Override
+    public double getReportRate() {
+        return rate.getRate();
+    }
+
+    @Override
+    public double getReportJitter() {
+        return rate.getJitter() / 1e6;
+    }
+
+    @Override
+    public double getDecodeTimeMean() {
+        return decode.getMean() / 1e3;
+    }
+
+    @Override
+    public double getDecodeTime99() {
+        return decode.percentile(99) / 1e3;
+    }
+
+    @Override
+    public double getLatency50() {
+        return latency.percentile(50) / 1e3;
+    }
+
+    @Override
+    public double getLatency90() {
+        return latency.percentile(90) / 1e3;
+    }
+
+    @Override
+    public double getLatency99() {
+        return latency.percentile(99) / 1e3;
+    }
+
+    @Override
+    public double getLatencyMax() {
+        return latency.getMax() / 1e3;
+    }
+
+    @Override
+    public long getDroppedEvents() {
+        return dispatcher.getDropped() - droppedBase;
+    }
+
+    @Override
+    public long getCoalescedOutputs() {
+        return output.getCoalesced() - coalescedBase;
+    }
+
+    @Override
+    public long getOutputReportsSent() {
+        return output.getSent() - sentBase;
+    }
+
+    @Override
+    public long getReconnects() {
+        return reconnects.sum();
+    }
+
+    @Override
+    public void reset() {
+        decode.reset();
+        latency.reset();
+        reconnects.reset();
+        droppedBase = dispatcher.getDropped();
+        coalescedBase = output.getCoalesced();
+        sentBase = output.getSent();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("reports=%d rate=%.1f/s jitter=%.2fms decode=%.2fus latency p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus dropped=%d coalesced=%d sent=%d reconnects=%d",
+                getReportsReceived(), getReportRate(), getReportJitter(), getDecodeTimeMean(),
+                getLatency50(), getLatency90(), getLatency99(), getLatencyMax(),
+                getDroppedEvents(), getCoalescedOutputs(), getOutputReportsSent(), getReconnects());
+    }
+}
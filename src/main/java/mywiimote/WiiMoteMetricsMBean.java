@@ -0,0 +1,89 @@
+package mywiimote;
+
+/**
+ * Health of the connection with one wiimote, as exposed through JMX (e.g. in
+ * JConsole or VisualVM, under the "mywiimote" domain).
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ * @see WiiMoteDriver#registerMetrics
+ */
+public interface WiiMoteMetricsMBean {
+
+    /**
+     * @return number of reports received from the wiimote.
+     */
+    public long getReportsReceived();
+
+    /**
+     * @return data reports received per second, or 0 if not measured yet.
+     */
+    public double getReportRate();
+
+    /**
+     * @return average variation of the interval between reports, in
+     * milliseconds.
+     */
+    public double getReportJitter();
+
+    /**
+     * @return average time to interpret a report, in microseconds.
+     */
+    public double getDecodeTimeMean();
+
+    /**
+     * @return 99th percentile of the time to interpret a report, in
+     * microseconds.
+     */
+    public double getDecodeTime99();
+
+    /**
+     * @return median of the time between the arrival of a report and the end
+     * of the notification of its events, in microseconds.
+     */
+    public double getLatency50();
+
+    /**
+     * @return 90th percentile of the time between the arrival of a report and
+     * the end of the notification of its events, in microseconds.
+     */
+    public double getLatency90();
+
+    /**
+     * @return 99th percentile of the time between the arrival of a report and
+     * the end of the notification of its events, in microseconds.
+     */
+    public double getLatency99();
+
+    /**
+     * @return longest time between the arrival of a report and the end of the
+     * notification of its events, in microseconds.
+     */
+    public double getLatencyMax();
+
+    /**
+     * @return number of events discarded because the queue of events was
+     * full.
+     */
+    public long getDroppedEvents();
+
+    /**
+     * @return number of changes of the leds or of the rumble merged into a
+     * report already waiting to be sent.
+     */
+    public long getCoalescedOutputs();
+
+    /**
+     * @return number of reports sent to the wiimote.
+     */
+    public long getOutputReportsSent();
+
+    /**
+     * @return number of times the connection was lost and established again.
+     */
+    public long getReconnects();
+
+    /**
+     * Restarts the counters and the histograms.
+     */
+    public void reset();
+}
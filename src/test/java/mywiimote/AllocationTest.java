@@ -0,0 +1,101 @@
+package mywiimote;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the interpretation of the data reports does not create any
+ * object, measuring the bytes allocated by the thread that feeds the reports.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class AllocationTest {
+
+    /**
+     * Times the stream of {@link Reports} is fed in each round.
+     */
+    private static final int ROUNDS = 4;
+
+    private static final int WARM_UP = 20;
+
+    /**
+     * Rounds measured. A path taken for the first time (e.g. the first
+     * overflow of the queue) may allocate once while it is resolved, but an
+     * allocation of the decoding shows up in every round.
+     */
+    private static final int MEASURED = 3;
+
+    private final com.sun.management.ThreadMXBean threads
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private WiiMoteDriver driver;
+
+    private byte[][] reports;
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        WiiMoteListener listener = (WiiMoteListener) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{WiiMoteListener.class}, (proxy, method, args) -> null);
+        driver = new WiiMoteDriver(listener, WiiMoteListener.SENSITIVITY_OFF,
+                EventDispatcher.DEFAULT_CAPACITY, OverflowPolicy.DROP_OLDEST);
+        driver.connect(new LoopbackTransport());
+        driver.getDispatcher().start();
+        reports = Reports.stream();
+    }
+
+    @AfterEach
+    void tearDown() {
+        driver.getDispatcher().stop();
+        driver.disconnect();
+    }
+
+    @Test
+    void buttonsAndAccelerometer() {
+        assertEquals(0, allocated(), "bytes allocated by the decoding");
+    }
+
+    @Test
+    void filterPipeline() {
+        driver.setFilters(AccelerometerFilters.deadZone(0.01), AccelerometerFilters.highPass(0.05),
+                AccelerometerFilters.lowPass(0.5), AccelerometerFilters.hysteresis(0.005));
+        assertEquals(0, allocated(), "bytes allocated by the decoding");
+    }
+
+    /**
+     * Feeds the reports a few times, so the code is compiled, and then
+     * measures a few more rounds.
+     *
+     * @return least bytes allocated by this thread in a measured round.
+     */
+    private long allocated() {
+        long id = Thread.currentThread().getId();
+        for (int i = 0; i < WARM_UP; i++) {
+            feed();
+        }
+        //the measuring itself may allocate the first time.
+        threads.getThreadAllocatedBytes(id);
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED; i++) {
+            long before = threads.getThreadAllocatedBytes(id);
+            feed();
+            least = Math.min(least, threads.getThreadAllocatedBytes(id) - before);
+        }
+        return least;
+    }
+
+    private void feed() {
+        for (int i = 0; i < ROUNDS; i++) {
+            for (byte[] report : reports) {
+                driver.process(report);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package mywiimote;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Connects a driver to a {@link LoopbackTransport} and checks when the
+ * calibration of the accelerometer is read from the wiimote.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class CalibrationTest {
+
+    private static final String REMEMBERED = "0019FD000001";
+
+    private static final String UNKNOWN = "0019FD000002";
+
+    private static final int READ_MEMORY = 0x17;
+
+    @TempDir
+    Path folder;
+
+    /**
+     * Boundaries of the values of the accelerometer delivered to the listener.
+     */
+    private final List<double[]> boundaries = new ArrayList<>();
+
+    private WiiMoteDriver driver;
+
+    private LoopbackTransport transport;
+
+    @BeforeEach
+    void setUp() {
+        WiiMoteListener listener = (WiiMoteListener) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{WiiMoteListener.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("accelerometerValues")) {
+                        boundaries.add(new double[]{(double) args[3], (double) args[4], (double) args[5]});
+                    }
+                    return null;
+                });
+        driver = new WiiMoteDriver(listener, WiiMoteListener.SENSITIVITY_OFF);
+        Path file = folder.resolve("devices");
+        KnownDevices.of(file).remember(REMEMBERED, Calibration.parse(new byte[]{(byte) 0x82, (byte) 0x7e, (byte) 0x84, 0x00, (byte) 0x9c, (byte) 0x98, (byte) 0x9e, 0x00}, 0));
+        driver.setKnownDevicesFile(file);
+        transport = new LoopbackTransport();
+    }
+
+    @AfterEach
+    void tearDown() {
+        driver.disconnect();
+    }
+
+    @Test
+    void rememberedWiimoteIsNotRead() {
+        assertTrue(driver.connect(REMEMBERED, transport));
+        assertEquals(0, sent(READ_MEMORY), "memory reads sent");
+    }
+
+    @Test
+    void unknownWiimoteIsRead() {
+        assertTrue(driver.connect(UNKNOWN, transport));
+        assertEquals(1, sent(READ_MEMORY), "memory reads sent");
+    }
+
+    @Test
+    void firstReportIsDelivered() {
+        assertTrue(driver.connect(UNKNOWN, transport));
+        byte[] report = {(byte) 0xa1, 0x31, 0x00, 0x00, (byte) 0x80, (byte) 0x80, (byte) 0x9a};
+        driver.process(report, report.length);
+        //never started: delivers the queue on this thread and returns.
+        driver.getDispatcher().run();
+        assertEquals(1, boundaries.size(), "values of the accelerometer delivered");
+        double zero = AccelerometerSample.NORMALIZED[Calibration.TYPICAL.zeroX];
+        assertEquals(zero, boundaries.get(0)[0], "boundary of x before the calibration is read");
+    }
+
+    /**
+     * @return number of reports with the given id sent to the wiimote.
+     */
+    private int sent(int id) {
+        int count = 0;
+        for (byte[] report = transport.takeSent(); report != null; report = transport.takeSent()) {
+            if (report.length > 1 && report[1] == id) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
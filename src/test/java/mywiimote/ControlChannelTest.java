@@ -0,0 +1,41 @@
+package mywiimote;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that closing a {@link ControlChannel} stops its thread, and that a
+ * report offered later is still handled.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class ControlChannelTest {
+
+    private static final long TIMEOUT = 5;
+
+    @Test
+    void closeStopsTheThread() throws InterruptedException {
+        BlockingQueue<Thread> handlers = new LinkedBlockingQueue<>();
+        ControlChannel channel = new ControlChannel((report, length) -> handlers.add(Thread.currentThread()));
+        byte[] status = {(byte) 0xa1, 0x20, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xc8};
+
+        channel.offer(status, status.length);
+        Thread first = handlers.poll(TIMEOUT, TimeUnit.SECONDS);
+        assertNotNull(first, "report handled");
+        channel.close();
+        first.join(TimeUnit.SECONDS.toMillis(TIMEOUT));
+        assertFalse(first.isAlive(), "thread stopped");
+
+        channel.offer(status, status.length);
+        Thread second = handlers.poll(TIMEOUT, TimeUnit.SECONDS);
+        assertNotNull(second, "report handled after close");
+        assertNotSame(first, second);
+        channel.close();
+    }
+}
@@ -0,0 +1,111 @@
+package mywiimote;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Overflows the queue of an {@link EventDispatcher} under each
+ * {@link OverflowPolicy} and checks that the presses and the releases
+ * delivered still alternate for every button, also of the Nunchuk.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class EventDispatcherTest {
+
+    private static final int CAPACITY = 16;
+
+    private static final int EVENTS = 10000;
+
+    /**
+     * Events queued between two deliveries, enough to overflow the queue.
+     */
+    private static final int DRAIN = 64;
+
+    @Test
+    void block() {
+        overflow(OverflowPolicy.BLOCK);
+    }
+
+    @Test
+    void dropNewest() {
+        overflow(OverflowPolicy.DROP_NEWEST);
+    }
+
+    @Test
+    void dropOldest() {
+        overflow(OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Queues random transitions (buttons of the wiimote and of the Nunchuk,
+     * connection of the Nunchuk) and values without a thread draining the
+     * queue, delivering what was kept every {@link #DRAIN} events.
+     */
+    private void overflow(OverflowPolicy policy) {
+        List<String> delivered = new ArrayList<>();
+        Object listener = Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{WiiMoteListener.class, NunchukListener.class}, (proxy, method, args) -> {
+                    delivered.add(method.getName());
+                    return null;
+                });
+        EventDispatcher dispatcher = new EventDispatcher((WiiMoteListener) listener, CAPACITY, policy, new LatencyHistogram(), new EventBus());
+        dispatcher.setNunchukListener((NunchukListener) listener);
+        Random random = new Random(42);
+        ButtonEnum[] all = ButtonEnum.values();
+        //the buttons of the wiimote, then C, Z and the connection of the Nunchuk.
+        boolean[] on = new boolean[all.length + 3];
+        for (int i = 0; i < EVENTS; i++) {
+            if (i % DRAIN == 0) {
+                //never started: delivers the queue on this thread and returns.
+                dispatcher.run();
+            }
+            if (random.nextBoolean()) {
+                if (random.nextBoolean()) {
+                    dispatcher.accelerometer(1, 2, 3, 0, 0, 0);
+                } else {
+                    dispatcher.nunchuk(0, 0, 1, 2, 3);
+                }
+                continue;
+            }
+            int b = random.nextInt(on.length);
+            on[b] = !on[b];
+            if (b < all.length) {
+                dispatcher.button(all[b], on[b]);
+            } else if (b == all.length) {
+                dispatcher.nunchuk(on[b] ? EventDispatcher.NUNCHUK_C_PRESSED : EventDispatcher.NUNCHUK_C_RELEASED);
+            } else if (b == all.length + 1) {
+                dispatcher.nunchuk(on[b] ? EventDispatcher.NUNCHUK_Z_PRESSED : EventDispatcher.NUNCHUK_Z_RELEASED);
+            } else {
+                dispatcher.nunchuk(on[b] ? EventDispatcher.NUNCHUK_CONNECTED : EventDispatcher.NUNCHUK_DISCONNECTED);
+            }
+        }
+        dispatcher.run();
+
+        assertEquals(EVENTS, delivered.size() + dispatcher.getDropped(), "events delivered or dropped");
+        assertTrue(dispatcher.getDropped() > 0, "the queue overflowed");
+        Map<String, Boolean> state = new HashMap<>();
+        for (String event : delivered) {
+            String name = event.replace("Disconnected", "Released").replace("Connected", "Pressed");
+            if (name.endsWith("Pressed")) {
+                String key = name.substring(0, name.length() - "Pressed".length());
+                assertTrue(state.put(key, true) != Boolean.TRUE, "twice in a row: " + event);
+            } else if (name.endsWith("Released")) {
+                String key = name.substring(0, name.length() - "Released".length());
+                assertEquals(Boolean.TRUE, state.put(key, false), "twice in a row: " + event);
+            }
+        }
+        int count = 0;
+        for (boolean o : on) {
+            count += o ? 1 : 0;
+        }
+        assertEquals(count, state.values().stream().filter(o -> o).count(), "states on at the end");
+    }
+}
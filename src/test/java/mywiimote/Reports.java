@@ -0,0 +1,45 @@
+package mywiimote;
+
+/**
+ * Canned streams of 0x31 reports (buttons and accelerometer) used by the
+ * tests and the benchmarks.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+final class Reports {
+
+    /**
+     * Number of reports of a stream. Power of two, so the benchmarks can
+     * cycle it with a mask.
+     */
+    static final int SIZE = 1024;
+
+    private Reports() {
+    }
+
+    /**
+     * Creates a stream where the accelerometer follows a slow wave on the
+     * three axes, and a button (sometimes a chord) is pressed and released
+     * every few reports.
+     *
+     * @return the stream of reports.
+     */
+    static byte[][] stream() {
+        byte[][] reports = new byte[SIZE][7];
+        for (int i = 0; i < SIZE; i++) {
+            byte[] r = reports[i];
+            r[0] = (byte) 0xa1;
+            r[1] = 0x31;
+            int phase = i / 8;
+            if (phase % 2 == 1) {
+                r[2] = (byte) (1 << (phase / 2 % 5));
+                r[3] = (byte) (phase % 3 == 0 ? 0x0C : 0x00);
+            }
+            double angle = 2 * Math.PI * i / SIZE;
+            r[4] = (byte) (128 + 40 * Math.sin(angle));
+            r[5] = (byte) (128 + 40 * Math.cos(angle));
+            r[6] = (byte) (154 + 20 * Math.sin(3 * angle));
+        }
+        return reports;
+    }
+}
@@ -0,0 +1,93 @@
+package mywiimote;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Overflows the queue of a {@link Subscription} and checks that the presses
+ * and the releases delivered still alternate for every button.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class SubscriptionTest {
+
+    private static final int CAPACITY = 4;
+
+    private static final int EVENTS = 10000;
+
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+    private final List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * One permit per event the subscriber may take, so it is slower than the
+     * wiimote.
+     */
+    private final Semaphore gate = new Semaphore(0);
+
+    @Test
+    void buttonsStayBalanced() throws InterruptedException {
+        Subscription subscription = new Subscription(new EventBus(), new ButtonListener() {
+            @Override
+            public void buttonPressed(ButtonEnum button) {
+                take(button + "+");
+            }
+
+            @Override
+            public void buttonReleased(ButtonEnum button) {
+                take(button + "-");
+            }
+        }, (x, y, z, xBoundary, yBoundary, zBoundary) -> take("accelerometer"), CAPACITY);
+        subscription.start();
+        Random random = new Random(42);
+        ButtonEnum[] all = ButtonEnum.values();
+        boolean[] pressed = new boolean[all.length];
+        for (int i = 0; i < EVENTS; i++) {
+            if (random.nextBoolean()) {
+                subscription.accelerometer(1, 2, 3, 0, 0, 0);
+            } else {
+                int b = random.nextInt(all.length);
+                pressed[b] = !pressed[b];
+                subscription.button(all[b], pressed[b]);
+            }
+            if (i % 100 == 99) {
+                gate.release(10);
+            }
+        }
+        gate.release(EVENTS);
+        subscription.cancel();
+        long deadline = System.nanoTime() + TIMEOUT;
+        int size = -1;
+        while (size != delivered.size() && System.nanoTime() < deadline) {
+            size = delivered.size();
+            Thread.sleep(50);
+        }
+
+        assertTrue(subscription.getDropped() > 0, "the queue overflowed");
+        boolean[] down = new boolean[all.length];
+        for (String event : new ArrayList<>(delivered)) {
+            for (ButtonEnum b : all) {
+                if (event.equals(b + "+")) {
+                    assertTrue(!down[b.ordinal()], "pressed twice: " + b);
+                    down[b.ordinal()] = true;
+                } else if (event.equals(b + "-")) {
+                    assertTrue(down[b.ordinal()], "released while not pressed: " + b);
+                    down[b.ordinal()] = false;
+                }
+            }
+        }
+    }
+
+    private void take(String event) {
+        gate.acquireUninterruptibly();
+        delivered.add(event);
+    }
+}
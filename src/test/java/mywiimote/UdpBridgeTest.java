@@ -0,0 +1,179 @@
+package mywiimote;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Streams the events of a driver connected to a {@link LoopbackTransport}
+ * through a {@link UdpBridge} to a {@link UdpBridgeClient} on localhost.
+ *
+ * @author Pablo Rangel <pablorangel@gmail.com>
+ */
+class UdpBridgeTest {
+
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+    private WiiMoteDriver driver;
+
+    private UdpBridgeClient client;
+
+    private UdpBridge bridge;
+
+    /**
+     * Events seen by a local subscriber, in order.
+     */
+    private final List<String> local = new ArrayList<>();
+
+    /**
+     * Events seen by the client, in order.
+     */
+    private final List<String> remote = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        driver = new WiiMoteDriver(new WiiMoteAdapter(), WiiMoteListener.SENSITIVITY_OFF);
+        driver.connect(new LoopbackTransport());
+        driver.subscribe(new ButtonListener() {
+            @Override
+            public void buttonPressed(ButtonEnum button) {
+                log(local, button + "+");
+            }
+
+            @Override
+            public void buttonReleased(ButtonEnum button) {
+                log(local, button + "-");
+            }
+        }, (x, y, z, xBoundary, yBoundary, zBoundary) -> log(local, accelerometer(x, y, z)), 1024);
+        client = UdpBridgeClient.open(0, new WiiMoteAdapter() {
+            @Override
+            public void buttonAPressed() {
+                log(remote, ButtonEnum.BA + "+");
+            }
+
+            @Override
+            public void buttonAReleased() {
+                log(remote, ButtonEnum.BA + "-");
+            }
+
+            @Override
+            public void buttonBPressed() {
+                log(remote, ButtonEnum.BB + "+");
+            }
+
+            @Override
+            public void buttonBReleased() {
+                log(remote, ButtonEnum.BB + "-");
+            }
+
+            @Override
+            public void accelerometerValues(double x, double y, double z, double xBoundary, double yBoundary, double zBoundary) {
+                log(remote, accelerometer(x, y, z));
+            }
+        });
+        int port = client.getLocalAddress().getPort();
+        bridge = UdpBridge.open(driver, new InetSocketAddress("127.0.0.1", port), 8, 1, TimeUnit.MILLISECONDS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        bridge.close();
+        client.close();
+        driver.disconnect();
+    }
+
+    @Test
+    void eventsArriveInOrder() throws InterruptedException {
+        byte[] report = {(byte) 0xa1, 0x31, 0, 0, (byte) 128, (byte) 128, (byte) 154};
+        for (int i = 0; i < 200; i++) {
+            //A held from the 50th report, B from the 100th, both released at the 150th.
+            report[3] = (byte) ((i >= 50 && i < 150 ? 0x08 : 0) | (i >= 100 && i < 150 ? 0x04 : 0));
+            report[4] = (byte) (100 + i % 50);
+            driver.process(report.clone());
+        }
+        //both sides are done when they stop receiving events.
+        long deadline = System.nanoTime() + TIMEOUT;
+        int previous = -1;
+        while (true) {
+            int current = size(local) + size(remote);
+            if (current == previous && current > 0) {
+                break;
+            }
+            assertTrue(System.nanoTime() < deadline, "events did not arrive");
+            previous = current;
+            Thread.sleep(50);
+        }
+        synchronized (local) {
+            synchronized (remote) {
+                assertTrue(local.contains(ButtonEnum.BB + "-"), "buttons were not published");
+                assertEquals(local, remote);
+            }
+        }
+        assertEquals(0, client.getLost());
+        assertEquals(0, client.getInvalid());
+        assertEquals(0, bridge.getDropped());
+    }
+
+    @Test
+    void restartedBridgeIsFollowed() throws IOException, InterruptedException {
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.connect(new InetSocketAddress("127.0.0.1", client.getLocalAddress().getPort()));
+            for (int sequence = 0; sequence < 100; sequence++) {
+                send(channel, sequence);
+            }
+            await(100);
+            //a late datagram is discarded, a restarted bridge counts from 0 again.
+            send(channel, 90);
+            for (int sequence = 0; sequence < 10; sequence++) {
+                send(channel, sequence);
+            }
+            await(110);
+        }
+        assertEquals(110, client.getReceived());
+        assertEquals(0, client.getLost());
+    }
+
+    /**
+     * Sends a datagram without events.
+     */
+    private static void send(DatagramChannel channel, int sequence) throws IOException {
+        ByteBuffer datagram = ByteBuffer.allocate(UdpBridge.HEADER_SIZE);
+        datagram.putShort(UdpBridge.MAGIC).put(UdpBridge.VERSION).put((byte) 0).putInt(sequence).flip();
+        channel.write(datagram);
+    }
+
+    private void await(long received) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT;
+        while (client.getReceived() < received) {
+            assertTrue(System.nanoTime() < deadline, "datagrams did not arrive");
+            Thread.sleep(10);
+        }
+    }
+
+    private static String accelerometer(double x, double y, double z) {
+        //the bridge sends floats.
+        return (float) x + " " + (float) y + " " + (float) z;
+    }
+
+    private static void log(List<String> events, String event) {
+        synchronized (events) {
+            events.add(event);
+        }
+    }
+
+    private static int size(List<String> events) {
+        synchronized (events) {
+            return events.size();
+        }
+    }
+}